@@ -21,14 +21,44 @@ public interface Failover<T> {
 
     List<T> getAll();
 
+    /**
+     * @return count of all objects, implementations should answer it without copying {@link #getAll()}.
+     */
+    default int size() {
+        return getAll().size();
+    }
+
     default void success(@Nonnull T object) {
         // default behavior: do nothing
     }
 
+    /**
+     * a success call with its latency, implementations not aware of latency treat it as {@link #success}.
+     */
+    default void success(@Nonnull T object, long latencyNanos) {
+        success(object);
+    }
+
     void fail(@Nonnull T object);
 
     void down(@Nonnull T object);
 
+    /**
+     * applies all outcomes in the batch, the successes of an object are applied before its failures.
+     * implementations may apply an object's outcomes as one update, the default one just calls
+     * {@link #success}/{@link #fail} for each of them.
+     */
+    default void recordOutcomes(@Nonnull OutcomeBatch<T> batch) {
+        batch.forEach((object, successes, failures) -> {
+            for (int i = 0; i < successes; i++) {
+                success(object);
+            }
+            for (int i = 0; i < failures; i++) {
+                fail(object);
+            }
+        });
+    }
+
     /**
      * better use {@code #getAvailable(int)} or {@code #getOneAvailable()}
      */
@@ -58,13 +88,13 @@ public interface Failover<T> {
      * @see FailoverUtils#supplyWithRetry
      */
     default <E, X extends Throwable> E supplyWithRetry(ThrowableFunction<T, E, X> func) throws X {
-        return FailoverUtils.supplyWithRetry(getAll().size(), 0, this, func);
+        return FailoverUtils.supplyWithRetry(size(), 0, this, func);
     }
 
     /**
      * @see FailoverUtils#runWithRetry
      */
     default <X extends Throwable> void runWithRetry(ThrowableConsumer<T, X> func) throws X {
-        FailoverUtils.runWithRetry(getAll().size(), 0, this, func);
+        FailoverUtils.runWithRetry(size(), 0, this, func);
     }
 }
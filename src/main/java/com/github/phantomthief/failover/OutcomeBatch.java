@@ -0,0 +1,87 @@
+package com.github.phantomthief.failover;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Success and failure counts of objects, to be applied by {@link Failover#recordOutcomes} at once.
+ *
+ * It's for clients completing lots of calls in one go, e.g. a pipelined client on an event loop tick.
+ * It's not thread safe, and can be reused after {@link #clear()}.
+ */
+public class OutcomeBatch<T> {
+
+    private final Map<T, Counts> counts = new LinkedHashMap<>();
+
+    private static final class Counts {
+
+        private int successes;
+        private int failures;
+    }
+
+    @FunctionalInterface
+    public interface OutcomeConsumer<T> {
+
+        void accept(@Nonnull T object, int successes, int failures);
+    }
+
+    @Nonnull
+    public OutcomeBatch<T> success(@Nonnull T object) {
+        return success(object, 1);
+    }
+
+    @Nonnull
+    public OutcomeBatch<T> success(@Nonnull T object, int times) {
+        checkArgument(times >= 0);
+        counts(object).successes += times;
+        return this;
+    }
+
+    @Nonnull
+    public OutcomeBatch<T> fail(@Nonnull T object) {
+        return fail(object, 1);
+    }
+
+    @Nonnull
+    public OutcomeBatch<T> fail(@Nonnull T object, int times) {
+        checkArgument(times >= 0);
+        counts(object).failures += times;
+        return this;
+    }
+
+    private Counts counts(T object) {
+        checkNotNull(object);
+        return counts.computeIfAbsent(object, it -> new Counts());
+    }
+
+    /**
+     * objects are visited in the order they were first recorded.
+     */
+    public void forEach(@Nonnull OutcomeConsumer<? super T> consumer) {
+        counts.forEach((object, count) -> consumer.accept(object, count.successes, count.failures));
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    public void clear() {
+        counts.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("OutcomeBatch{");
+        forEach((object, successes, failures) -> sb.append(object).append("=+").append(successes)
+                .append("/-").append(failures).append(", "));
+        if (!counts.isEmpty()) {
+            sb.setLength(sb.length() - 2);
+        }
+        return sb.append('}').toString();
+    }
+}
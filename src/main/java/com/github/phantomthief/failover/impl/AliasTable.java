@@ -0,0 +1,92 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Vose's alias method, see http://www.keithschwarz.com/darts-dice-coins/
+ *
+ * O(n) to build, O(1) and allocation free to pick an index by weight.
+ * The table is immutable once built, so it can be shared between threads.
+ */
+final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights non negative, and at least one of them is positive.
+     */
+    AliasTable(@Nonnull double[] weights) {
+        int n = weights.length;
+        double sum = 0;
+        for (double weight : weights) {
+            checkArgument(weight >= 0, "invalid weight:%s", weight);
+            sum += weight;
+        }
+        checkArgument(sum > 0, "there is no positive weight.");
+
+        probability = new double[n];
+        alias = new int[n];
+
+        double[] scaled = new double[n];
+        // use two stacks on a single array: small from head, large from tail.
+        int[] work = new int[n];
+        int smallSize = 0;
+        int largeIndex = n;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1) {
+                work[smallSize++] = i;
+            } else {
+                work[--largeIndex] = i;
+            }
+        }
+        while (smallSize > 0 && largeIndex < n) {
+            int small = work[--smallSize];
+            int large = work[largeIndex++];
+            probability[small] = scaled[small];
+            alias[small] = large;
+            scaled[large] = (scaled[large] + scaled[small]) - 1;
+            if (scaled[large] < 1) {
+                work[smallSize++] = large;
+            } else {
+                work[--largeIndex] = large;
+            }
+        }
+        // the rest are exactly 1 except precision problem.
+        while (largeIndex < n) {
+            int large = work[largeIndex++];
+            probability[large] = 1;
+            alias[large] = large;
+        }
+        while (smallSize > 0) {
+            int small = work[--smallSize];
+            // a zero weight item must never be picked even if there is float precision problem.
+            probability[small] = weights[small] > 0 ? 1 : 0;
+            alias[small] = weights[small] > 0 ? small : firstPositive(weights);
+        }
+    }
+
+    private static int firstPositive(double[] weights) {
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                return i;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    int size() {
+        return probability.length;
+    }
+
+    int next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
@@ -59,6 +59,15 @@ public class ComboFailover<T> implements Failover<T>, Iterable<Failover<T>> {
                 .collect(toList());
     }
 
+    @Override
+    public int size() {
+        int size = 0;
+        for (Failover<T> failover : failoverList) {
+            size += failover.size();
+        }
+        return size;
+    }
+
     @Nullable
     @Override
     public T getOneAvailableExclude(Collection<T> exclusions) {
@@ -127,6 +136,11 @@ public class ComboFailover<T> implements Failover<T>, Iterable<Failover<T>> {
         getByObject(object).forEach(failover -> failover.success(object));
     }
 
+    @Override
+    public void success(@Nonnull T object, long latencyNanos) {
+        getByObject(object).forEach(failover -> failover.success(object, latencyNanos));
+    }
+
     private Collection<Failover<T>> getByObject(T object) {
         Collection<Failover<T>> list = mapByObject.get(object);
         if (recheckOnMiss && list.isEmpty()) { // surely it's wrong. build it again.
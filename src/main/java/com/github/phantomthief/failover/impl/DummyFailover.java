@@ -55,6 +55,11 @@ public class DummyFailover<T> implements Failover<T> {
         }
     }
 
+    @Override
+    public int size() {
+        return supplier.get().size();
+    }
+
     @Override
     public void fail(T object) {
         // do nothing
@@ -0,0 +1,203 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.WEIGHT_CHANGED;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
+
+/**
+ * Dispatches {@link WeightEvent}s to a listener on an executor, so a slow listener never blocks the publisher.
+ *
+ * <ul>
+ *     <li>events are kept in a bounded lock free queue, the oldest one is dropped if it's full;</li>
+ *     <li>{@link WeightEvent.Type#WEIGHT_CHANGED} events of an object not dispatched yet are coalesced
+ *     by CAS on its slot, so an error storm takes one slot of the queue for each object;</li>
+ *     <li>a WEIGHT_CHANGED event is not coalesced any more once another event of the object is queued after it,
+ *     so the events of an object are always dispatched in order;</li>
+ *     <li>at most one task is running or submitted at a time, so events are dispatched in order.</li>
+ * </ul>
+ */
+final class EventDispatcher<T> {
+
+    private static final Logger logger = getLogger(EventDispatcher.class);
+
+    private final Consumer<WeightEvent<T>> listener;
+    private final Executor executor;
+    private final int capacity;
+
+    /**
+     * {@link WeightEvent}s and {@link PendingChange}s.
+     */
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final LongAdder dropped = new LongAdder();
+
+    EventDispatcher(@Nonnull Consumer<WeightEvent<T>> listener, @Nonnull Executor executor, int capacity) {
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * a queued WEIGHT_CHANGED event, it's referenced by {@link Slot#pendingChange} until a newer one.
+     * the new weight is read from the slot when it's dispatched instead of merged from later events,
+     * as concurrent changes of an object may be published in a different order than they were applied.
+     */
+    static final class PendingChange<T> {
+
+        private static final Object OPEN = new Object();
+
+        private final Slot<T> slot;
+        private final int oldWeight;
+        /**
+         * {@link #OPEN} while later changes are merged into it,
+         * the weight it ends at after another event of the object was queued,
+         * {@code null} after dispatched or dropped.
+         */
+        private final AtomicReference<Object> state = new AtomicReference<>(OPEN);
+
+        private PendingChange(Slot<T> slot, int oldWeight) {
+            this.slot = slot;
+            this.oldWeight = oldWeight;
+        }
+
+        /**
+         * the change was applied to the slot already, so it's merged if this one is still to read the weight.
+         */
+        private boolean tryMerge() {
+            return state.get() == OPEN;
+        }
+
+        /**
+         * @param weight the old weight of the event queued after this one.
+         */
+        private void close(int weight) {
+            state.compareAndSet(OPEN, weight);
+        }
+
+        /**
+         * @return the event to dispatch, {@code null} if it was taken already or the weight is back to the old one.
+         */
+        @Nullable
+        private WeightEvent<T> take() {
+            Object current = state.getAndSet(null);
+            if (current == null) {
+                return null;
+            }
+            int newWeight = current == OPEN ? slot.currentWeight : (Integer) current;
+            if (newWeight == oldWeight) {
+                return null;
+            }
+            return new WeightEvent<>(WEIGHT_CHANGED, slot.object, oldWeight, newWeight);
+        }
+    }
+
+    void publish(@Nonnull Slot<T> slot, @Nonnull WeightEvent<T> event) {
+        if (event.type() == WEIGHT_CHANGED) {
+            PendingChange<T> pending;
+            PendingChange<T> added;
+            do {
+                pending = slot.pendingChange;
+                if (pending != null && pending.tryMerge()) {
+                    // merged into the one in queue.
+                    return;
+                }
+                added = new PendingChange<>(slot, event.oldWeight());
+            } while (!slot.compareAndSetPendingChange(pending, added));
+            offer(added);
+        } else {
+            PendingChange<T> pending = slot.pendingChange;
+            if (pending != null) {
+                // later changes are queued after this event.
+                pending.close(event.oldWeight());
+            }
+            offer(event);
+        }
+    }
+
+    private void offer(Object item) {
+        queue.offer(item);
+        if (size.incrementAndGet() > capacity) {
+            Object oldest = queue.poll();
+            if (oldest != null) {
+                size.decrementAndGet();
+                dropped.increment();
+                if (oldest instanceof PendingChange) {
+                    ((PendingChange<?>) oldest).take();
+                }
+            }
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                logger.warn("fail to dispatch failover events, queued:{}", size.get(), e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        try {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                size.decrementAndGet();
+                WeightEvent<T> event;
+                if (item instanceof PendingChange) {
+                    event = ((PendingChange<T>) item).take();
+                    if (event == null) {
+                        continue;
+                    }
+                } else {
+                    event = (WeightEvent<T>) item;
+                }
+                try {
+                    listener.accept(event);
+                } catch (Throwable e) {
+                    logger.error("fail to handle event:{}", event, e);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // events published after the last poll but before the flag was cleared.
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * @return events waiting for dispatching.
+     */
+    int queued() {
+        return size.get();
+    }
+
+    /**
+     * @return events dropped because the queue was full.
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A binary indexed tree (Fenwick tree) over weights, for weighted sampling without replacement.
+ *
+ * Both picking an index by weight and removing an index are O(log n).
+ * It's not thread safe, use {@link #copy()} to get a scratch tree for each sampling.
+ */
+final class FenwickTree {
+
+    private final double[] weights;
+    private final double[] tree; // 1-based
+    private final int highestStep;
+
+    private double sum;
+    private int positiveCount;
+
+    /**
+     * @param weights non negative.
+     */
+    FenwickTree(@Nonnull double[] weights) {
+        int n = weights.length;
+        this.weights = weights.clone();
+        this.tree = new double[n + 1];
+        this.highestStep = Integer.highestOneBit(Math.max(n, 1));
+        for (int i = 0; i < n; i++) {
+            double weight = weights[i];
+            checkArgument(weight >= 0, "invalid weight:%s", weight);
+            if (weight > 0) {
+                sum += weight;
+                positiveCount++;
+            }
+            int node = i + 1;
+            tree[node] += weight;
+            int parent = node + (node & -node);
+            if (parent <= n) {
+                tree[parent] += tree[node];
+            }
+        }
+    }
+
+    private FenwickTree(FenwickTree other) {
+        this.weights = other.weights.clone();
+        this.tree = other.tree.clone();
+        this.highestStep = other.highestStep;
+        this.sum = other.sum;
+        this.positiveCount = other.positiveCount;
+    }
+
+    FenwickTree copy() {
+        return new FenwickTree(this);
+    }
+
+    int size() {
+        return weights.length;
+    }
+
+    boolean isEmpty() {
+        return positiveCount == 0;
+    }
+
+    /**
+     * @return an index picked by weight, or {@code -1} if there is no positive weight left.
+     */
+    int next() {
+        if (positiveCount == 0) {
+            return -1;
+        }
+        if (sum <= 0) { // float precision problem after lots of removing
+            resetSum();
+        }
+        double left = ThreadLocalRandom.current().nextDouble(sum);
+        int pos = 0;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] <= left) {
+                pos = next;
+                left -= tree[next];
+            }
+        }
+        if (pos < weights.length && weights[pos] > 0) {
+            return pos;
+        }
+        // float precision problem, it's very rare.
+        for (int i = weights.length - 1; i >= 0; i--) {
+            if (weights[i] > 0) {
+                return i;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * set weight of the index to zero.
+     */
+    void remove(int index) {
+        double weight = weights[index];
+        if (weight <= 0) {
+            return;
+        }
+        weights[index] = 0;
+        positiveCount--;
+        sum = positiveCount == 0 ? 0 : sum - weight;
+        for (int node = index + 1; node < tree.length; node += node & -node) {
+            tree[node] -= weight;
+        }
+    }
+
+    private void resetSum() {
+        double newSum = 0;
+        for (double weight : weights) {
+            newSum += weight;
+        }
+        sum = newSum;
+    }
+}
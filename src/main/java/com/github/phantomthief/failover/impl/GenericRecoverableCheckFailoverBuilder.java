@@ -7,6 +7,8 @@ import java.util.function.Predicate;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 
+import com.github.phantomthief.failover.util.CheckExecutor;
+
 /**
  * @author w.vela
  */
@@ -40,6 +42,13 @@ public class GenericRecoverableCheckFailoverBuilder<E> {
         return this;
     }
 
+    @CheckReturnValue
+    @Nonnull
+    public GenericRecoverableCheckFailoverBuilder<E> setCheckExecutor(@Nonnull CheckExecutor checkExecutor) {
+        builder.setCheckExecutor(checkExecutor);
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public GenericRecoverableCheckFailoverBuilder<E> setFailDuration(long failDuration,
@@ -2,14 +2,18 @@ package com.github.phantomthief.failover.impl;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
+import com.github.phantomthief.failover.util.CheckExecutor;
 import com.github.phantomthief.util.ThrowableFunction;
 import com.github.phantomthief.util.ThrowablePredicate;
 
@@ -94,6 +98,119 @@ public class GenericWeightFailoverBuilder<E> {
         return this;
     }
 
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> checkBackoff(long maxInterval, TimeUnit unit) {
+        builder.checkBackoff(maxInterval, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> checkExecutor(@Nonnull CheckExecutor executor) {
+        builder.checkExecutor(executor);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> passiveRecovery(double ratio, double permitsPerSecond) {
+        builder.passiveRecovery(ratio, permitsPerSecond);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> sharedHealth(@Nonnull SharedHealthRegistry registry) {
+        builder.sharedHealth(registry);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> sharedHealth(@Nonnull SharedHealthRegistry registry,
+            @Nonnull Function<? super E, ?> keyFunction) {
+        builder.sharedHealth(registry, keyFunction);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> timingWheel() {
+        builder.timingWheel();
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> checkParallelism(int parallelism) {
+        builder.checkParallelism(parallelism);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> checkTimeout(long time, TimeUnit unit) {
+        builder.checkTimeout(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> weightRefreshInterval(long time, TimeUnit unit) {
+        builder.weightRefreshInterval(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> latencyAware(long decayTime, TimeUnit unit) {
+        builder.latencyAware(decayTime, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> slowStart(long window, TimeUnit unit) {
+        builder.slowStart(window, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> slowStart(long window, TimeUnit unit, @Nonnull SlowStartRamp ramp) {
+        builder.slowStart(window, unit, ramp);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> onEvent(@Nonnull Consumer<WeightEvent<E>> listener) {
+        builder.onEvent(listener);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> asyncListeners(int queueCapacity) {
+        builder.asyncListeners(queueCapacity);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> asyncListeners(int queueCapacity, @Nonnull Executor executor) {
+        builder.asyncListeners(queueCapacity, executor);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> recordStats() {
+        builder.recordStats();
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public GenericWeightFailoverBuilder<E>
@@ -111,6 +228,14 @@ public class GenericWeightFailoverBuilder<E> {
         return this;
     }
 
+    @CheckReturnValue
+    @Nonnull
+    public GenericWeightFailoverBuilder<E> asyncChecker(
+            @Nonnull Function<? super E, CompletableFuture<Double>> failChecker) {
+        builder.asyncChecker(failChecker);
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public GenericWeightFailoverBuilder<E> filter(Predicate<E> filter) {
@@ -0,0 +1,51 @@
+package com.github.phantomthief.failover.impl;
+
+/**
+ * Time decayed exponentially weighted moving average of latency.
+ *
+ * A sample weighs {@code 1 - exp(-elapsed / decay)}, so the average follows the recent latency
+ * in about {@code decay} time no matter how many calls there are.
+ * In peak mode, a sample higher than the average replaces it at once, and it only decays slowly,
+ * so a sudden slowdown is reacted immediately.
+ * Concurrent updates may lose a sample, which is fine for an estimate, and there is no lock or CAS.
+ */
+final class LatencyEwma {
+
+    private final double decayNanos;
+    private final boolean peak;
+
+    /**
+     * in nanos, 0 if there is no sample yet.
+     */
+    private volatile double value;
+    private volatile long lastUpdateNanos;
+
+    LatencyEwma(long decayNanos) {
+        this(decayNanos, false);
+    }
+
+    LatencyEwma(long decayNanos, boolean peak) {
+        this.decayNanos = decayNanos;
+        this.peak = peak;
+    }
+
+    void update(long latencyNanos) {
+        long now = System.nanoTime();
+        double sample = Math.max(1, latencyNanos);
+        double current = value;
+        if (current == 0 || peak && sample > current) {
+            value = sample;
+        } else {
+            double weight = Math.exp(-Math.max(0, now - lastUpdateNanos) / decayNanos);
+            value = current * weight + sample * (1 - weight);
+        }
+        lastUpdateNanos = now;
+    }
+
+    /**
+     * @return the average in nanos, 0 if there is no sample yet.
+     */
+    double get() {
+        return value;
+    }
+}
@@ -16,6 +16,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.github.phantomthief.failover.Failover;
+import com.github.phantomthief.failover.OutcomeBatch;
 
 /**
  * @author huangli
@@ -57,7 +58,7 @@ public class PartitionFailover<T> implements Failover<T>, Closeable {
     PartitionFailover(PartitionFailoverBuilder<T> partitionFailoverBuilder,
             WeightFailover<T> weightFailover) {
         this.weightFailover = weightFailover;
-        this.totalResourceSize = weightFailover.getAll().size();
+        this.totalResourceSize = weightFailover.size();
         this.maxExternalPoolIdleMillis = partitionFailoverBuilder.maxExternalPoolIdleMillis;
         int corePartitionSize = partitionFailoverBuilder.corePartitionSize;
         List<T> available = weightFailover.getAvailable(corePartitionSize);
@@ -93,6 +94,11 @@ public class PartitionFailover<T> implements Failover<T>, Closeable {
         return weightFailover.getAll();
     }
 
+    @Override
+    public int size() {
+        return weightFailover.size();
+    }
+
     @Override
     public void fail(@Nonnull T object) {
         weightFailover.fail(object);
@@ -115,6 +121,24 @@ public class PartitionFailover<T> implements Failover<T>, Closeable {
         subtractConcurrency(object);
     }
 
+    @Override
+    public void success(@Nonnull T object, long latencyNanos) {
+        weightFailover.success(object, latencyNanos);
+        subtractConcurrency(object);
+    }
+
+    @Override
+    public void recordOutcomes(@Nonnull OutcomeBatch<T> batch) {
+        weightFailover.recordOutcomes(batch);
+        batch.forEach((object, successes, failures) -> {
+            subtractConcurrency(object, successes + failures);
+            // an unknown object is skipped by the weight failover.
+            if (failures > 0 && weightFailover.contains(object) && weightFailover.currentWeight(object) <= 0) {
+                replaceDownResource(object);
+            }
+        });
+    }
+
     @Nullable
     private ResEntry<T> lookup(Object object) {
         ResEntry<T>[] refCopy = resources;
@@ -127,12 +151,19 @@ public class PartitionFailover<T> implements Failover<T>, Closeable {
     }
 
     private void subtractConcurrency(@Nonnull T object) {
+        subtractConcurrency(object, 1);
+    }
+
+    private void subtractConcurrency(@Nonnull T object, int count) {
         ResEntry<T> resEntry = lookup(object);
-        if (resEntry == null) {
+        if (resEntry == null || count <= 0) {
             return;
         }
-        resEntry.lastReturnNanoTime = System.nanoTime();
-        resEntry.concurrency.updateAndGet(oldValue -> Math.max(oldValue - 1, 0));
+        updateLastReturnTime(resEntry);
+        // skip the write if it's already 0
+        if (resEntry.concurrency.get() > 0) {
+            resEntry.concurrency.updateAndGet(oldValue -> Math.max(oldValue - count, 0));
+        }
     }
 
     private void addConcurrency(@Nonnull T object) {
@@ -140,10 +171,17 @@ public class PartitionFailover<T> implements Failover<T>, Closeable {
         if (resEntry == null) {
             return;
         }
-        resEntry.lastReturnNanoTime = System.nanoTime();
+        updateLastReturnTime(resEntry);
         resEntry.concurrency.updateAndGet(oldValue -> Math.max(oldValue + 1, 1));
     }
 
+    private void updateLastReturnTime(ResEntry<T> resEntry) {
+        // it's only read when reuse recent resource is enabled
+        if (maxExternalPoolIdleMillis > 0) {
+            resEntry.lastReturnNanoTime = System.nanoTime();
+        }
+    }
+
     private synchronized void replaceDownResource(T object) {
         ResEntry<T>[] resourceRefCopy = resources;
         if (resourceRefCopy.length == totalResourceSize) {
@@ -5,14 +5,17 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
+import com.github.phantomthief.failover.util.CheckExecutor;
 import com.github.phantomthief.util.ThrowableFunction;
 import com.github.phantomthief.util.ThrowablePredicate;
 
@@ -144,6 +147,91 @@ public class PartitionFailoverBuilder<T> {
         return this;
     }
 
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> checkBackoff(long maxInterval, TimeUnit unit) {
+        weightFailoverBuilder.checkBackoff(maxInterval, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> checkExecutor(@Nonnull CheckExecutor executor) {
+        weightFailoverBuilder.checkExecutor(executor);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> passiveRecovery(double ratio, double permitsPerSecond) {
+        weightFailoverBuilder.passiveRecovery(ratio, permitsPerSecond);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> sharedHealth(@Nonnull SharedHealthRegistry registry) {
+        weightFailoverBuilder.sharedHealth(registry);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> sharedHealth(@Nonnull SharedHealthRegistry registry,
+            @Nonnull Function<? super T, ?> keyFunction) {
+        weightFailoverBuilder.sharedHealth(registry, keyFunction);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> timingWheel() {
+        weightFailoverBuilder.timingWheel();
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> checkParallelism(int parallelism) {
+        weightFailoverBuilder.checkParallelism(parallelism);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> checkTimeout(long time, TimeUnit unit) {
+        weightFailoverBuilder.checkTimeout(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> weightRefreshInterval(long time, TimeUnit unit) {
+        weightFailoverBuilder.weightRefreshInterval(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> slowStart(long window, TimeUnit unit) {
+        weightFailoverBuilder.slowStart(window, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> slowStart(long window, TimeUnit unit, @Nonnull SlowStartRamp ramp) {
+        weightFailoverBuilder.slowStart(window, unit, ramp);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> latencyAware(long decayTime, TimeUnit unit) {
+        weightFailoverBuilder.latencyAware(decayTime, unit);
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public PartitionFailoverBuilder<T> filter(@Nonnull Predicate<T> filter) {
@@ -168,4 +256,11 @@ public class PartitionFailoverBuilder<T> {
         return this;
     }
 
+    @CheckReturnValue
+    @Nonnull
+    public PartitionFailoverBuilder<T> asyncChecker(
+            @Nonnull Function<? super T, CompletableFuture<Double>> failChecker) {
+        weightFailoverBuilder.asyncChecker(failChecker);
+        return this;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+package com.github.phantomthief.failover.impl;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.github.phantomthief.failover.Failover;
+import com.github.phantomthief.failover.OutcomeBatch;
+
+/**
+ * Power of two choices on top of {@link WeightFailover}:
+ * two candidates are picked by health weight, and the one with the lower load is returned.
+ *
+ * It's O(1) like {@link WeightFailover#getOneAvailable()}, but spreads load much better under skewed backend speed.
+ *
+ * The load is {@code peakEwma(latency) * (inflight + 1)}.
+ * The latency is from {@link #success(Object, long)}, and inflight is increased by
+ * {@link #getOneAvailable()}/{@link #getOneAvailableExclude}, decreased by success/fail/down,
+ * so every selected object should be returned by one of them, as {@link PartitionFailover}.
+ * An object without any latency sample is preferred if it's idle, and avoided if it's not,
+ * so a new object doesn't get a burst before its first response.
+ */
+public class PowerOfTwoChoicesFailover<T> implements Failover<T>, Closeable {
+
+    private final WeightFailover<T> weightFailover;
+    private final long latencyDecayNanos;
+    private final ConcurrentMap<T, Load> loads = new ConcurrentHashMap<>();
+
+    private static final class Load {
+
+        private final LatencyEwma latency;
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        Load(long latencyDecayNanos) {
+            this.latency = new LatencyEwma(latencyDecayNanos, true);
+        }
+
+        double cost() {
+            double ewma = latency.get();
+            int current = inflight.get();
+            if (ewma == 0) {
+                return current == 0 ? 0 : Double.MAX_VALUE;
+            }
+            return ewma * (current + 1);
+        }
+    }
+
+    PowerOfTwoChoicesFailover(PowerOfTwoChoicesFailoverBuilder<T> builder,
+            WeightFailover<T> weightFailover) {
+        this.weightFailover = weightFailover;
+        this.latencyDecayNanos = builder.latencyDecayNanos;
+    }
+
+    public static <T> PowerOfTwoChoicesFailoverBuilder<T> newBuilder() {
+        return new PowerOfTwoChoicesFailoverBuilder<>();
+    }
+
+    private Load load(T object) {
+        Load load = loads.get(object);
+        if (load == null) {
+            load = loads.computeIfAbsent(object, it -> new Load(latencyDecayNanos));
+        }
+        return load;
+    }
+
+    private void release(T object) {
+        release(object, 1);
+    }
+
+    private void release(T object, int count) {
+        Load load = loads.get(object);
+        if (load == null || count <= 0) {
+            return;
+        }
+        AtomicInteger inflight = load.inflight;
+        int current;
+        do {
+            current = inflight.get();
+            if (current == 0) {
+                // more returns than selections, e.g. the object was not picked by this failover.
+                return;
+            }
+        } while (!inflight.compareAndSet(current, Math.max(0, current - count)));
+    }
+
+    @Override
+    public List<T> getAll() {
+        return weightFailover.getAll();
+    }
+
+    @Override
+    public int size() {
+        return weightFailover.size();
+    }
+
+    @Override
+    public void success(@Nonnull T object) {
+        weightFailover.success(object);
+        release(object);
+    }
+
+    @Override
+    public void success(@Nonnull T object, long latencyNanos) {
+        weightFailover.success(object);
+        Load load = loads.get(object);
+        if (load == null && weightFailover.contains(object)) {
+            load = load(object);
+        }
+        if (load != null) {
+            load.latency.update(latencyNanos);
+        }
+        release(object);
+    }
+
+    @Override
+    public void fail(@Nonnull T object) {
+        weightFailover.fail(object);
+        release(object);
+    }
+
+    @Override
+    public void down(@Nonnull T object) {
+        weightFailover.down(object);
+        release(object);
+    }
+
+    @Override
+    public void recordOutcomes(@Nonnull OutcomeBatch<T> batch) {
+        weightFailover.recordOutcomes(batch);
+        batch.forEach((object, successes, failures) -> release(object, successes + failures));
+    }
+
+    @Override
+    public List<T> getAvailable() {
+        return weightFailover.getAvailable();
+    }
+
+    @Override
+    public List<T> getAvailableExclude(Collection<T> exclusions) {
+        return weightFailover.getAvailableExclude(exclusions);
+    }
+
+    @Override
+    public Set<T> getFailed() {
+        return weightFailover.getFailed();
+    }
+
+    @Nullable
+    @Override
+    public T getOneAvailable() {
+        return getOneAvailableExclude(emptySet());
+    }
+
+    /**
+     * the second candidate is picked with the first one excluded, so they are always two distinct objects,
+     * unless only one is available.
+     */
+    @Nullable
+    @Override
+    public T getOneAvailableExclude(Collection<T> exclusions) {
+        T first = weightFailover.getOneAvailableExclude(exclusions);
+        if (first == null) {
+            return null;
+        }
+        if (weightFailover.isOnlyAvailable(first)) {
+            // there is no second candidate, don't waste the picks on the first one.
+            load(first).inflight.incrementAndGet();
+            return first;
+        }
+        Collection<T> excludeFirst;
+        if (exclusions.isEmpty()) {
+            excludeFirst = singleton(first);
+        } else {
+            excludeFirst = new ArrayList<>(exclusions.size() + 1);
+            excludeFirst.addAll(exclusions);
+            excludeFirst.add(first);
+        }
+        T second = weightFailover.getOneAvailableExclude(excludeFirst);
+        Load firstLoad = load(first);
+        T result = first;
+        Load resultLoad = firstLoad;
+        if (second != null) {
+            Load secondLoad = load(second);
+            if (secondLoad.cost() < firstLoad.cost()) {
+                result = second;
+                resultLoad = secondLoad;
+            }
+        }
+        resultLoad.inflight.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * it's weighted sampling without load, and it doesn't count inflight.
+     */
+    @Override
+    public List<T> getAvailable(int n) {
+        return weightFailover.getAvailable(n);
+    }
+
+    /**
+     * @see WeightFailover#updateResources(Map)
+     * loads of removed resources are dropped.
+     */
+    public void updateResources(@Nonnull Map<T, Integer> newWeightMap) {
+        weightFailover.updateResources(newWeightMap);
+        loads.keySet().retainAll(newWeightMap.keySet());
+    }
+
+    /**
+     * @see WeightFailover#stats()
+     */
+    @Nonnull
+    public Map<T, ResourceStats> stats() {
+        return weightFailover.stats();
+    }
+
+    int inflight(T object) {
+        Load load = loads.get(object);
+        return load == null ? 0 : load.inflight.get();
+    }
+
+    @Override
+    public void close() {
+        weightFailover.close();
+    }
+
+    @Override
+    public String toString() {
+        return "PowerOfTwoChoicesFailover [" + weightFailover + "]";
+    }
+}
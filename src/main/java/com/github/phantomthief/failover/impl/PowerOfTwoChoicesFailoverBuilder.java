@@ -0,0 +1,272 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import com.github.phantomthief.failover.util.CheckExecutor;
+import com.github.phantomthief.util.ThrowableFunction;
+import com.github.phantomthief.util.ThrowablePredicate;
+
+@SuppressWarnings({"checkstyle:VisibilityModifier", "checkstyle:HiddenField"})
+public class PowerOfTwoChoicesFailoverBuilder<T> {
+
+    private static final long DEFAULT_LATENCY_DECAY = SECONDS.toNanos(10);
+
+    private WeightFailoverBuilder<T> weightFailoverBuilder = new WeightFailoverBuilder<>();
+
+    long latencyDecayNanos = DEFAULT_LATENCY_DECAY;
+
+    @Nonnull
+    public PowerOfTwoChoicesFailover<T> build(Collection<T> original) {
+        checkNotNull(original);
+        return new PowerOfTwoChoicesFailover<>(this, weightFailoverBuilder.build(original));
+    }
+
+    @Nonnull
+    public PowerOfTwoChoicesFailover<T> build(Collection<T> original, int initWeight) {
+        checkNotNull(original);
+        return new PowerOfTwoChoicesFailover<>(this, weightFailoverBuilder.build(original, initWeight));
+    }
+
+    @Nonnull
+    public PowerOfTwoChoicesFailover<T> build(Map<T, Integer> original) {
+        checkNotNull(original);
+        return new PowerOfTwoChoicesFailover<>(this, weightFailoverBuilder.build(original));
+    }
+
+    /**
+     * the peak latency decays to the recent latency in about {@code decayTime}, default is 10s.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> latencyDecay(long decayTime, TimeUnit unit) {
+        checkNotNull(unit);
+        checkArgument(decayTime > 0);
+        this.latencyDecayNanos = unit.toNanos(decayTime);
+        return this;
+    }
+
+    //-------------------------methods delegate to weightFailoverBuilder below---------------------
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> name(String value) {
+        weightFailoverBuilder.name(value);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> autoAddOnMissing(int weight) {
+        weightFailoverBuilder.autoAddOnMissing(weight);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> onMinWeight(Consumer<T> listener) {
+        weightFailoverBuilder.onMinWeight(listener);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> onRecovered(Consumer<T> listener) {
+        weightFailoverBuilder.onRecovered(listener);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> onEvent(@Nonnull Consumer<WeightEvent<T>> listener) {
+        weightFailoverBuilder.onEvent(listener);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> asyncListeners(int queueCapacity) {
+        weightFailoverBuilder.asyncListeners(queueCapacity);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> asyncListeners(int queueCapacity, @Nonnull Executor executor) {
+        weightFailoverBuilder.asyncListeners(queueCapacity, executor);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> minWeight(int value) {
+        weightFailoverBuilder.minWeight(value);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> failReduceRate(double rate) {
+        weightFailoverBuilder.failReduceRate(rate);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> failReduce(int weight) {
+        weightFailoverBuilder.failReduce(weight);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> successIncreaseRate(double rate) {
+        weightFailoverBuilder.successIncreaseRate(rate);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> successIncrease(int weight) {
+        weightFailoverBuilder.successIncrease(weight);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> checkDuration(long time, TimeUnit unit) {
+        weightFailoverBuilder.checkDuration(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> checkBackoff(long maxInterval, TimeUnit unit) {
+        weightFailoverBuilder.checkBackoff(maxInterval, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> checkExecutor(@Nonnull CheckExecutor executor) {
+        weightFailoverBuilder.checkExecutor(executor);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> timingWheel() {
+        weightFailoverBuilder.timingWheel();
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> passiveRecovery(double ratio, double permitsPerSecond) {
+        weightFailoverBuilder.passiveRecovery(ratio, permitsPerSecond);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> sharedHealth(@Nonnull SharedHealthRegistry registry) {
+        weightFailoverBuilder.sharedHealth(registry);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> sharedHealth(@Nonnull SharedHealthRegistry registry,
+            @Nonnull Function<? super T, ?> keyFunction) {
+        weightFailoverBuilder.sharedHealth(registry, keyFunction);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> checkParallelism(int parallelism) {
+        weightFailoverBuilder.checkParallelism(parallelism);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> checkTimeout(long time, TimeUnit unit) {
+        weightFailoverBuilder.checkTimeout(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> weightRefreshInterval(long time, TimeUnit unit) {
+        weightFailoverBuilder.weightRefreshInterval(time, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> slowStart(long window, TimeUnit unit) {
+        weightFailoverBuilder.slowStart(window, unit);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> slowStart(long window, TimeUnit unit, @Nonnull SlowStartRamp ramp) {
+        weightFailoverBuilder.slowStart(window, unit, ramp);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> recordStats() {
+        weightFailoverBuilder.recordStats();
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> filter(@Nonnull Predicate<T> filter) {
+        weightFailoverBuilder.filter(filter);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T>
+            checker(@Nonnull ThrowableFunction<? super T, Double, Throwable> failChecker) {
+        weightFailoverBuilder.checker(failChecker);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> asyncChecker(
+            @Nonnull Function<? super T, CompletableFuture<Double>> failChecker) {
+        weightFailoverBuilder.asyncChecker(failChecker);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public PowerOfTwoChoicesFailoverBuilder<T> checker(
+            @Nonnull ThrowablePredicate<? super T, Throwable> failChecker,
+            @Nonnegative double recoveredInitRate) {
+        weightFailoverBuilder.checker(failChecker, recoveredInitRate);
+        return this;
+    }
+}
@@ -15,11 +15,16 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 
 import com.github.phantomthief.failover.Failover;
+import com.github.phantomthief.failover.OutcomeBatch;
+import com.github.phantomthief.failover.util.CheckExecutor;
 import com.github.phantomthief.util.MoreSuppliers.CloseableSupplier;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -47,7 +52,8 @@ public class RecoverableCheckFailover<T> implements Failover<T>, Closeable {
     private volatile boolean closed;
 
     RecoverableCheckFailover(List<T> original, Predicate<T> checker, int failCount,
-            long failDuration, long recoveryCheckDuration, boolean returnOriginalWhileAllFailed) {
+            long failDuration, long recoveryCheckDuration, boolean returnOriginalWhileAllFailed,
+            @Nullable CheckExecutor checkExecutor) {
         this.returnOriginalWhileAllFailed = returnOriginalWhileAllFailed;
         this.original = original;
         this.failDuration = failDuration;
@@ -59,14 +65,7 @@ public class RecoverableCheckFailover<T> implements Failover<T>, Closeable {
                         return create(failCount);
                     }
                 });
-        recoveryFuture = lazy(() -> getInstance().scheduleWithFixedDelay(() -> {
-            if (closed) {
-                tryCloseScheduler();
-                return;
-            }
-            if (failedList.isEmpty()) {
-                return;
-            }
+        Runnable check = () -> {
             try {
                 // 考虑到COWArraySet不支持iterator.remove，所以这里使用搜集->统一清理的策略
                 List<T> covered = failedList.stream()
@@ -77,6 +76,33 @@ public class RecoverableCheckFailover<T> implements Failover<T>, Closeable {
             } catch (Throwable e) {
                 logger.error("Ops.", e);
             }
+        };
+        AtomicBoolean checking = new AtomicBoolean();
+        recoveryFuture = lazy(() -> getInstance().scheduleWithFixedDelay(() -> {
+            if (closed) {
+                tryCloseScheduler();
+                return;
+            }
+            if (failedList.isEmpty()) {
+                return;
+            }
+            if (checkExecutor == null) {
+                check.run();
+            } else if (checking.compareAndSet(false, true)) {
+                // skipped if the last one is still running.
+                try {
+                    checkExecutor.submit(() -> {
+                        try {
+                            check.run();
+                        } finally {
+                            checking.set(false);
+                        }
+                    });
+                } catch (Throwable e) {
+                    checking.set(false);
+                    logger.error("Ops.", e);
+                }
+            }
         }, recoveryCheckDuration, recoveryCheckDuration, MILLISECONDS));
     }
 
@@ -110,6 +136,41 @@ public class RecoverableCheckFailover<T> implements Failover<T>, Closeable {
         recoveryFuture.get();
     }
 
+    /**
+     * successes are ignored, and failures of an object are recorded under a single lock.
+     */
+    @Override
+    public void recordOutcomes(OutcomeBatch<T> batch) {
+        batch.forEach((object, successes, failures) -> {
+            if (failures == 0) {
+                return;
+            }
+            if (!getAll().contains(object)) {
+                logger.warn("invalid fail obj:{}, it's not in original list.", object);
+                return;
+            }
+            logger.warn("server {} failed {} times.", object, failures);
+            boolean addToFail = false;
+            EvictingQueue<Long> evictingQueue = failCountMap.getUnchecked(object);
+            synchronized (evictingQueue) {
+                long now = currentTimeMillis();
+                // the queue only keeps the latest ones.
+                int times = Math.min(failures, evictingQueue.size() + evictingQueue.remainingCapacity());
+                for (int i = 0; i < times; i++) {
+                    evictingQueue.add(now);
+                }
+                if (evictingQueue.remainingCapacity() == 0
+                        && evictingQueue.element() >= now - failDuration) {
+                    addToFail = true;
+                }
+            }
+            if (addToFail) {
+                failedList.add(object);
+            }
+            recoveryFuture.get();
+        });
+    }
+
     @Override
     public void down(T object) {
         if (!getAll().contains(object)) {
@@ -149,6 +210,11 @@ public class RecoverableCheckFailover<T> implements Failover<T>, Closeable {
         return original;
     }
 
+    @Override
+    public int size() {
+        return original.size();
+    }
+
     public synchronized void close() {
         closed = true;
         tryCloseScheduler();
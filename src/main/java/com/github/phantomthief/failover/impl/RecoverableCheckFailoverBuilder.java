@@ -14,6 +14,8 @@ import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 
+import com.github.phantomthief.failover.util.CheckExecutor;
+
 @Deprecated
 public final class RecoverableCheckFailoverBuilder<T> {
 
@@ -26,6 +28,7 @@ public final class RecoverableCheckFailoverBuilder<T> {
     private long recoveryCheckDuration;
     private boolean returnOriginalWhileAllFailed;
     private Predicate<T> checker;
+    private CheckExecutor checkExecutor;
 
     @CheckReturnValue
     @Nonnull
@@ -51,6 +54,17 @@ public final class RecoverableCheckFailoverBuilder<T> {
         return this;
     }
 
+    /**
+     * run the checker on {@code checkExecutor} instead of the shared scheduler thread,
+     * so a hung checker doesn't delay checks of other failovers.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public RecoverableCheckFailoverBuilder<T> setCheckExecutor(@Nonnull CheckExecutor checkExecutor) {
+        this.checkExecutor = checkNotNull(checkExecutor);
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public RecoverableCheckFailoverBuilder<T> setFailDuration(long failDuration, TimeUnit unit) {
@@ -72,7 +86,7 @@ public final class RecoverableCheckFailoverBuilder<T> {
         RecoverableCheckFailoverBuilder<E> thisBuilder = (RecoverableCheckFailoverBuilder<E>) this;
         thisBuilder.ensure();
         return new RecoverableCheckFailover<>((List<E>) original, thisBuilder.checker, failCount,
-                failDuration, recoveryCheckDuration, returnOriginalWhileAllFailed);
+                failDuration, recoveryCheckDuration, returnOriginalWhileAllFailed, checkExecutor);
     }
 
     private void ensure() {
@@ -0,0 +1,92 @@
+package com.github.phantomthief.failover.impl;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of a resource in {@link WeightFailover}, see {@link WeightFailover#stats()}.
+ *
+ * Counters are read one by one without stopping writers,
+ * so they may be slightly inconsistent with each other.
+ */
+public final class ResourceStats {
+
+    private final int currentWeight;
+    private final int initWeight;
+    private final long successCount;
+    private final long failureCount;
+    private final long downCount;
+    private final long recoveryCount;
+    private final long selectionCount;
+    private final long minWeightNanos;
+    private final long lastTransitionTime;
+
+    ResourceStats(int currentWeight, int initWeight, long successCount, long failureCount, long downCount,
+            long recoveryCount, long selectionCount, long minWeightNanos, long lastTransitionTime) {
+        this.currentWeight = currentWeight;
+        this.initWeight = initWeight;
+        this.successCount = successCount;
+        this.failureCount = failureCount;
+        this.downCount = downCount;
+        this.recoveryCount = recoveryCount;
+        this.selectionCount = selectionCount;
+        this.minWeightNanos = minWeightNanos;
+        this.lastTransitionTime = lastTransitionTime;
+    }
+
+    public int currentWeight() {
+        return currentWeight;
+    }
+
+    public int initWeight() {
+        return initWeight;
+    }
+
+    public long successCount() {
+        return successCount;
+    }
+
+    public long failureCount() {
+        return failureCount;
+    }
+
+    public long downCount() {
+        return downCount;
+    }
+
+    public long recoveryCount() {
+        return recoveryCount;
+    }
+
+    /**
+     * times it was returned by getOneAvailable/getAvailable(n)/getAvailableExclude.
+     */
+    public long selectionCount() {
+        return selectionCount;
+    }
+
+    /**
+     * total time at min weight, including the current period if it's at min weight now.
+     */
+    public long minWeightTime(TimeUnit unit) {
+        return unit.convert(minWeightNanos, NANOSECONDS);
+    }
+
+    /**
+     * @return time in millis of the last transition between available/unavailable or to/from min weight,
+     * 0 if there is none.
+     */
+    public long lastTransitionTime() {
+        return lastTransitionTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceStats{currentWeight=" + currentWeight + ", initWeight=" + initWeight
+                + ", successCount=" + successCount + ", failureCount=" + failureCount
+                + ", downCount=" + downCount + ", recoveryCount=" + recoveryCount
+                + ", selectionCount=" + selectionCount + ", minWeightNanos=" + minWeightNanos
+                + ", lastTransitionTime=" + lastTransitionTime + "}";
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Health of resources shared by failovers, e.g. several {@link WeightFailover}s of different call types
+ * to the same hosts, members of a {@link ComboFailover}, or the one under a {@link PartitionFailover}.
+ *
+ * A resource is identified by a key, the object itself by default, see {@link WeightFailoverBuilder#sharedHealth}.
+ * Once a resource is down in one failover, it's down in all failovers on the registry at once,
+ * and once it's recovered (by a check or by success), it's recovered in all of them at the recover rate.
+ * While it's down, it's checked at most once per check duration by any of them.
+ *
+ * Weights above zero are not shared, as they depend on the init weight and the policy of each failover.
+ */
+public final class SharedHealthRegistry {
+
+    private static final Logger logger = getLogger(SharedHealthRegistry.class);
+
+    private static final SharedHealthRegistry GLOBAL = new SharedHealthRegistry();
+
+    /**
+     * down resources, a resource absent is healthy.
+     */
+    private final ConcurrentMap<Object, Health> downs = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Member> members = new CopyOnWriteArrayList<>();
+
+    /**
+     * a registry of its own, e.g. for a group of failovers which should not share with others.
+     */
+    public SharedHealthRegistry() {
+    }
+
+    /**
+     * the JVM-wide registry.
+     */
+    @Nonnull
+    public static SharedHealthRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * a failover on the registry, it must not reference the failover strongly,
+     * so the failover can be released without {@code close()}.
+     */
+    interface Member {
+
+        /**
+         * @return {@code true} if the failover was closed or released, it's removed from the registry then.
+         */
+        boolean isGone();
+
+        void onDown(@Nonnull Object key);
+
+        void onRecovered(@Nonnull Object key, double rate);
+    }
+
+    private static final class Health {
+
+        /**
+         * the next check of any member should not be earlier than it.
+         */
+        private final AtomicLong nextCheckNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * the member gets all resources down already.
+     */
+    void register(@Nonnull Member member) {
+        members.add(member);
+        for (Object key : downs.keySet()) {
+            member.onDown(key);
+        }
+    }
+
+    void unregister(@Nonnull Member member) {
+        members.remove(member);
+    }
+
+    /**
+     * @return down resources.
+     */
+    @Nonnull
+    public Set<Object> downs() {
+        return ImmutableSet.copyOf(downs.keySet());
+    }
+
+    /**
+     * a member found the resource down, it's applied to other members if it was healthy.
+     */
+    void down(@Nonnull Object key, @Nonnull Member source) {
+        checkNotNull(key);
+        if (downs.putIfAbsent(key, new Health()) != null) {
+            return;
+        }
+        for (Member member : members) {
+            if (member != source) {
+                apply(member, m -> m.onDown(key));
+            }
+        }
+    }
+
+    /**
+     * a member found the resource recovered, it's applied to other members if it was down.
+     */
+    void recovered(@Nonnull Object key, double rate, @Nonnull Member source) {
+        checkNotNull(key);
+        if (downs.remove(key) == null) {
+            return;
+        }
+        for (Member member : members) {
+            if (member != source) {
+                apply(member, m -> m.onRecovered(key, rate));
+            }
+        }
+    }
+
+    private void apply(Member member, Consumer<Member> action) {
+        if (member.isGone()) {
+            members.remove(member);
+            return;
+        }
+        try {
+            action.accept(member);
+        } catch (Throwable e) {
+            logger.error("", e);
+        }
+    }
+
+    /**
+     * @return {@code false} if the resource was checked by another member in {@code intervalNanos}.
+     */
+    boolean tryAcquireCheck(@Nonnull Object key, long intervalNanos) {
+        Health health = downs.get(key);
+        if (health == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long next = health.nextCheckNanos.get();
+        return now - next >= 0 && health.nextCheckNanos.compareAndSet(next, now + intervalNanos);
+    }
+}
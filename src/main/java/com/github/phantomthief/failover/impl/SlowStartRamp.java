@@ -0,0 +1,35 @@
+package com.github.phantomthief.failover.impl;
+
+/**
+ * How the selection weight of a recovered or newly added object grows in the slow start window,
+ * see {@link WeightFailoverBuilder#slowStart(long, java.util.concurrent.TimeUnit, SlowStartRamp)}.
+ */
+public enum SlowStartRamp {
+
+    /**
+     * grows from 10% to 100% linearly.
+     */
+    LINEAR {
+        @Override
+        double factor(double progress) {
+            return MIN_FACTOR + (1 - MIN_FACTOR) * progress;
+        }
+    },
+    /**
+     * grows from 10% to 100% exponentially, it's slower at the beginning.
+     */
+    EXPONENTIAL {
+        @Override
+        double factor(double progress) {
+            return Math.pow(MIN_FACTOR, 1 - progress);
+        }
+    };
+
+    private static final double MIN_FACTOR = 0.1;
+
+    /**
+     * @param progress in [0, 1]
+     * @return the factor of selection weight.
+     */
+    abstract double factor(double progress);
+}
@@ -0,0 +1,64 @@
+package com.github.phantomthief.failover.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
+
+/**
+ * Per resource counters of {@link WeightFailover}, only created if stats recording is on.
+ *
+ * Counters are {@link LongAdder}, so concurrent recording doesn't contend on a single cell,
+ * and {@link #snapshot} never blocks writers.
+ */
+@SuppressWarnings("checkstyle:VisibilityModifier")
+final class StatsCounter {
+
+    final LongAdder successes = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder downs = new LongAdder();
+    final LongAdder recoveries = new LongAdder();
+    final LongAdder selections = new LongAdder();
+
+    private final LongAdder minWeightNanos = new LongAdder();
+    /**
+     * {@link System#nanoTime()} when it reached min weight, 0 if it's above min weight.
+     */
+    private final AtomicLong minWeightSince = new AtomicLong();
+    private volatile long lastTransitionTime;
+
+    /**
+     * records a transition between available/unavailable or to/from min weight.
+     */
+    void onWeightChanged(int oldWeight, int newWeight, int minWeight) {
+        boolean wasMin = oldWeight <= minWeight;
+        boolean isMin = newWeight <= minWeight;
+        if (wasMin != isMin) {
+            if (isMin) {
+                long now = System.nanoTime();
+                minWeightSince.compareAndSet(0, now == 0 ? 1 : now);
+            } else {
+                long since = minWeightSince.getAndSet(0);
+                if (since != 0) {
+                    minWeightNanos.add(System.nanoTime() - since);
+                }
+            }
+        }
+        if (wasMin != isMin || oldWeight <= 0 != newWeight <= 0) {
+            lastTransitionTime = System.currentTimeMillis();
+        }
+    }
+
+    @Nonnull
+    <T> ResourceStats snapshot(@Nonnull Slot<T> slot) {
+        long minWeightTime = minWeightNanos.sum();
+        long since = minWeightSince.get();
+        if (since != 0) {
+            minWeightTime += System.nanoTime() - since;
+        }
+        return new ResourceStats(slot.currentWeight, slot.initWeight, successes.sum(), failures.sum(),
+                downs.sum(), recoveries.sum(), selections.sum(), minWeightTime, lastTransitionTime);
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.phantomthief.failover.impl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A weight transition of an object in {@link WeightFailover},
+ * see {@link WeightFailoverBuilder#onEvent}.
+ */
+public final class WeightEvent<T> {
+
+    public enum Type {
+        /**
+         * the weight reached 0.
+         */
+        DOWN,
+        /**
+         * the weight reached the min weight.
+         */
+        MIN_WEIGHT,
+        /**
+         * the weight was recovered from 0, by the checker or by success.
+         */
+        RECOVERED,
+        /**
+         * any other weight change, it's not published for a change above as it has its own event.
+         * consecutive ones of an object not dispatched yet are coalesced into one.
+         */
+        WEIGHT_CHANGED
+    }
+
+    private final Type type;
+    private final T object;
+    private final int oldWeight;
+    private final int newWeight;
+    private final long time;
+
+    WeightEvent(@Nonnull Type type, @Nonnull T object, int oldWeight, int newWeight) {
+        this.type = type;
+        this.object = object;
+        this.oldWeight = oldWeight;
+        this.newWeight = newWeight;
+        this.time = System.currentTimeMillis();
+    }
+
+    @Nonnull
+    public Type type() {
+        return type;
+    }
+
+    @Nonnull
+    public T object() {
+        return object;
+    }
+
+    public int oldWeight() {
+        return oldWeight;
+    }
+
+    public int newWeight() {
+        return newWeight;
+    }
+
+    /**
+     * @return time in millis when it happened, or when it was dispatched for a coalesced WEIGHT_CHANGED event.
+     */
+    public long time() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + object + ", " + oldWeight + "->" + newWeight + "]";
+    }
+}
@@ -1,40 +1,49 @@
 package com.github.phantomthief.failover.impl;
 
-import static com.github.phantomthief.tuple.Tuple.tuple;
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.DOWN;
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.MIN_WEIGHT;
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.RECOVERED;
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.WEIGHT_CHANGED;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableList;
-import static java.util.stream.Collectors.toSet;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.Closeable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
 import java.util.function.Predicate;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 
 import com.github.phantomthief.failover.Failover;
-import com.github.phantomthief.tuple.TwoTuple;
+import com.github.phantomthief.failover.OutcomeBatch;
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
 import com.github.phantomthief.util.MoreSuppliers.CloseableSupplier;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * 默认权重记录
@@ -47,15 +56,30 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
 
     private static final Logger logger = getLogger(WeightFailover.class);
 
+    private static final int FILTER_PICK_TRIES = 5;
+    /**
+     * picking at least so many objects uses {@link WeightedReservoir} instead of {@link FenwickTree}.
+     */
+    private static final int RESERVOIR_MIN_PICKS = 16;
+
     private final IntUnaryOperator failReduceWeight;
     private final IntUnaryOperator successIncreaseWeight;
 
-    private final ConcurrentMap<T, Integer> initWeightMap;
-    private final ConcurrentMap<T, Integer> currentWeightMap;
+    private final WeightTable<T> weightTable;
     @SuppressWarnings("checkstyle:VisibilityModifier")
     final CloseableSupplier<ScheduledFuture<?>> recoveryFuture;
+    private final WeightFailoverCheckTask<T> checkTask;
+    /**
+     * {@code null} if health is not shared.
+     */
+    @Nullable
+    private final SharedMember<T> sharedMember;
     private final Consumer<T> onMinWeight;
     private final int minWeight;
+    /**
+     * 0 if passive recovery is off.
+     */
+    private final double passiveRecoveryRatio;
 
     /**
      * {@code null} if this feature is off.
@@ -71,31 +95,145 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
     @SuppressWarnings("checkstyle:VisibilityModifier")
     AtomicBoolean closed = new AtomicBoolean(false);
 
-    private AtomicInteger allAvailableVersion = new AtomicInteger();
+    private final ConcurrentMap<Object, Failover<T>> filteredViews = new ConcurrentHashMap<>();
 
-    @SuppressWarnings({"checkstyle:VisibilityModifier"})
-    private static class AllAvailable<T> {
-        int version;
-        List<T> allAvailable;
-    }
-
-    private volatile AllAvailable<T> allAvailable;
+    /**
+     * {@code null} if listeners are called synchronously.
+     */
+    @Nullable
+    private final EventDispatcher<T> eventDispatcher;
+    private final boolean publishWeightChanged;
 
     WeightFailover(WeightFailoverBuilder<T> builder) {
         this.minWeight = builder.minWeight;
+        this.passiveRecoveryRatio = builder.passiveRecoveryRatio;
         this.failReduceWeight = builder.failReduceWeight;
         this.successIncreaseWeight = builder.successIncreaseWeight;
-        this.initWeightMap = new ConcurrentHashMap<>(builder.initWeightMap);
-        this.currentWeightMap = new ConcurrentHashMap<>(builder.initWeightMap);
+        this.weightTable = new WeightTable<>(builder.initWeightMap, builder);
         this.onMinWeight = builder.onMinWeight;
         this.weightOnMissingNode = builder.weightOnMissingNode;
         this.filter = builder.filter;
-        this.allAvailable = new AllAvailable<>();
-        this.allAvailable.allAvailable = ImmutableList.copyOf(builder.initWeightMap.keySet());
-        this.allAvailable.version = allAvailableVersion.get();
-        WeightFailoverCheckTask t = new WeightFailoverCheckTask<>(this, builder, closed,
-                initWeightMap, currentWeightMap, allAvailableVersion);
+        if (builder.listenerQueueCapacity > 0) {
+            this.eventDispatcher = new EventDispatcher<>(listener(builder), builder.listenerExecutor,
+                    builder.listenerQueueCapacity);
+        } else {
+            this.eventDispatcher = null;
+        }
+        this.publishWeightChanged = eventDispatcher != null && builder.onEvent != null;
+        this.sharedMember = builder.sharedHealth != null ? new SharedMember<>(this, builder) : null;
+        WeightFailoverCheckTask<T> t = new WeightFailoverCheckTask<>(this, builder, closed, weightTable,
+                eventDispatcher, sharedMember);
         this.recoveryFuture = t.lazyFuture();
+        this.checkTask = t;
+        if (sharedMember != null) {
+            // the last one, as objects down in the registry are applied to this failover.
+            sharedMember.registry.register(sharedMember);
+        }
+    }
+
+    /**
+     * this failover on a {@link SharedHealthRegistry}, it references the failover weakly,
+     * so the failover can still be released without {@code close()}.
+     */
+    static final class SharedMember<T> implements SharedHealthRegistry.Member {
+
+        private final SharedHealthRegistry registry;
+        @Nullable
+        private final Function<? super T, ?> keyFunction;
+        private final long checkIntervalNanos;
+        private final WeakReference<WeightFailover<T>> failover;
+
+        SharedMember(WeightFailover<T> failover, WeightFailoverBuilder<T> builder) {
+            this.registry = builder.sharedHealth;
+            this.keyFunction = builder.healthKey;
+            this.checkIntervalNanos = MILLISECONDS.toNanos(builder.checkDuration);
+            this.failover = new WeakReference<>(failover);
+        }
+
+        private Object key(T object) {
+            return keyFunction == null ? object : keyFunction.apply(object);
+        }
+
+        void down(T object) {
+            registry.down(key(object), this);
+        }
+
+        void recovered(T object, double rate) {
+            registry.recovered(key(object), rate, this);
+        }
+
+        /**
+         * @return {@code false} if the object was checked by another failover in this check duration.
+         */
+        boolean tryAcquireCheck(T object) {
+            return registry.tryAcquireCheck(key(object), checkIntervalNanos);
+        }
+
+        @Override
+        public boolean isGone() {
+            WeightFailover<T> current = failover.get();
+            return current == null || current.closed.get();
+        }
+
+        @Override
+        public void onDown(@Nonnull Object key) {
+            WeightFailover<T> current = failover.get();
+            if (current != null) {
+                for (Slot<T> slot : slotsOf(current, key)) {
+                    current.down(slot.object);
+                }
+            }
+        }
+
+        @Override
+        public void onRecovered(@Nonnull Object key, double rate) {
+            WeightFailover<T> current = failover.get();
+            if (current != null) {
+                for (Slot<T> slot : slotsOf(current, key)) {
+                    current.checkTask.recover(slot, rate);
+                }
+            }
+        }
+
+        /**
+         * transitions are rare, so all objects are scanned for a key function.
+         */
+        @SuppressWarnings("unchecked")
+        private List<Slot<T>> slotsOf(WeightFailover<T> current, Object key) {
+            List<Slot<T>> result = new ArrayList<>(1);
+            if (keyFunction == null) {
+                Slot<T> slot = current.weightTable.get((T) key);
+                if (slot != null) {
+                    result.add(slot);
+                }
+                return result;
+            }
+            for (Slot<T> slot : current.weightTable.slots()) {
+                if (slot != null && key.equals(keyFunction.apply(slot.object))) {
+                    result.add(slot);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * it must not reference the failover, as it's shared with the check task.
+     */
+    private static <T> Consumer<WeightEvent<T>> listener(WeightFailoverBuilder<T> builder) {
+        Consumer<T> onMinWeight = builder.onMinWeight;
+        Consumer<T> onRecovered = builder.onRecovered;
+        Consumer<WeightEvent<T>> onEvent = builder.onEvent;
+        return event -> {
+            if (event.type() == MIN_WEIGHT && onMinWeight != null) {
+                onMinWeight.accept(event.object());
+            } else if (event.type() == RECOVERED && onRecovered != null) {
+                onRecovered.accept(event.object());
+            }
+            if (onEvent != null) {
+                onEvent.accept(event);
+            }
+        };
     }
 
     /**
@@ -114,6 +252,9 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
     public void close() {
         closed.set(true);
         tryCloseRecoveryScheduler(recoveryFuture, this.toString());
+        if (sharedMember != null) {
+            sharedMember.registry.unregister(sharedMember);
+        }
     }
 
     static void tryCloseRecoveryScheduler(CloseableSupplier<ScheduledFuture<?>> recoveryFuture, String name) {
@@ -130,7 +271,28 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
 
     @Override
     public List<T> getAll() {
-        return new ArrayList<>(initWeightMap.keySet());
+        return weightTable.all();
+    }
+
+    @Override
+    public int size() {
+        return weightTable.size();
+    }
+
+    /**
+     * @return {@code null} if the object is not in original list and auto add is off.
+     */
+    @Nullable
+    private Slot<T> slot(T object) {
+        Slot<T> slot = weightTable.get(object);
+        if (slot == null) {
+            if (weightOnMissingNode == null) {
+                logger.warn("invalid fail obj:{}, it's not in original list.", object);
+                return null;
+            }
+            slot = weightTable.getOrAdd(object, weightOnMissingNode);
+        }
+        return slot;
     }
 
     @Override
@@ -139,30 +301,22 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
             logger.warn("invalid fail call, null object found.");
             return;
         }
-        currentWeightMap.compute(object, (k, oldValue) -> {
-            if (oldValue == null) {
-                if (weightOnMissingNode == null) {
-                    logger.warn("invalid fail obj:{}, it's not in original list.", object);
-                    return null;
-                } else {
-                    oldValue = weightOnMissingNode;
-                    initWeightMap.putIfAbsent(object, weightOnMissingNode);
-                }
-            }
-            int initWeight = initWeightMap.get(k);
-            int result = max(minWeight, oldValue - failReduceWeight.applyAsInt(initWeight));
-            if (onMinWeight != null) {
-                if (result == minWeight && result != oldValue) {
-                    onMinWeight.accept(object);
-                }
-            }
-            if (result == 0) {
-                logger.warn("found down object:{}", k);
-                recoveryFuture.get();
-            }
-            return result;
-        });
-        allAvailableVersion.incrementAndGet();
+        Slot<T> slot = slot(object);
+        if (slot == null) {
+            return;
+        }
+        int oldValue;
+        int result;
+        do {
+            oldValue = slot.currentWeight;
+            result = max(minWeight, oldValue - failReduceWeight.applyAsInt(slot.initWeight));
+        } while (!slot.compareAndSetWeight(oldValue, result));
+        weightTable.onWeightChanged(slot, oldValue, result);
+        if (slot.stats != null) {
+            slot.stats.failures.increment();
+        }
+        afterChanged(slot, oldValue, result);
+        afterReduced(slot, oldValue, result);
     }
 
     @Override
@@ -171,62 +325,141 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
             logger.warn("invalid fail call, null object found.");
             return;
         }
-        currentWeightMap.compute(object, (k, oldValue) -> {
-            if (oldValue == null) {
-                if (weightOnMissingNode == null) {
-                    logger.warn("invalid fail obj:{}, it's not in original list.", object);
-                    return null;
-                } else {
-                    oldValue = weightOnMissingNode;
-                    initWeightMap.putIfAbsent(object, weightOnMissingNode);
-                }
+        Slot<T> slot = slot(object);
+        if (slot == null) {
+            return;
+        }
+        int oldValue;
+        do {
+            oldValue = slot.currentWeight;
+        } while (!slot.compareAndSetWeight(oldValue, minWeight));
+        weightTable.onWeightChanged(slot, oldValue, minWeight);
+        if (slot.stats != null) {
+            slot.stats.downs.increment();
+        }
+        afterChanged(slot, oldValue, minWeight);
+        afterReduced(slot, oldValue, minWeight);
+    }
+
+    /**
+     * each object is updated by a single CAS, and the selection snapshot version is bumped at most once.
+     */
+    @Override
+    public void recordOutcomes(@Nonnull OutcomeBatch<T> batch) {
+        boolean[] transition = {false};
+        List<Runnable> afterChanged = new ArrayList<>(0);
+        batch.forEach((object, successCount, failures) -> {
+            if (successCount == 0 && failures == 0) {
+                return;
             }
-            int result = minWeight;
-            if (onMinWeight != null) {
-                if (result != oldValue) {
-                    onMinWeight.accept(object);
+            Slot<T> slot = slot(object);
+            if (slot == null) {
+                return;
+            }
+            // the first success recovers a down object as success() does, the rest are applied as usual.
+            int successes = successCount > 0 && passiveRecover(slot) ? successCount - 1 : successCount;
+            int initWeight = slot.initWeight;
+            long increase = (long) successIncreaseWeight.applyAsInt(initWeight) * successes;
+            long reduce = (long) failReduceWeight.applyAsInt(initWeight) * failures;
+            int oldValue;
+            int result;
+            do {
+                oldValue = slot.currentWeight;
+                long weight = oldValue;
+                if (successes > 0 && weight < initWeight) {
+                    weight = min(initWeight, weight + increase);
+                }
+                if (failures > 0) {
+                    weight = max(minWeight, weight - reduce);
                 }
+                result = (int) weight;
+            } while (oldValue != result && !slot.compareAndSetWeight(oldValue, result));
+            if (weightTable.applyWeightChange(slot, oldValue, result)) {
+                transition[0] = true;
             }
-            if (result == 0) {
-                logger.warn("found down object:{}", k);
-                recoveryFuture.get();
+            if (slot.stats != null) {
+                slot.stats.successes.add(successCount);
+                slot.stats.failures.add(failures);
+            }
+            int old = oldValue;
+            int changed = result;
+            if (old != changed) {
+                afterChanged.add(() -> afterChanged(slot, old, changed));
+            }
+            if (failures > 0) {
+                afterChanged.add(() -> afterReduced(slot, old, changed));
+            }
+            if (old <= 0 && changed > 0) {
+                afterChanged.add(() -> afterRecovered(slot, changed));
             }
-            return result;
         });
-        allAvailableVersion.incrementAndGet();
+        if (transition[0]) {
+            weightTable.bumpVersion();
+        }
+        // listeners run after the new snapshot version is published.
+        afterChanged.forEach(Runnable::run);
     }
 
-    @Override
-    public List<T> getAvailable() {
-        // refresh if need
-        int version = allAvailableVersion.get();
-        boolean refreshed = false;
-        if (allAvailable.version != version) {
-            refreshed = true;
-            AllAvailable tmp = new AllAvailable<>();
-            tmp.version = version;
-            tmp.allAvailable = doGetAvailable();
-            allAvailable = tmp;
+    private void afterChanged(Slot<T> slot, int oldValue, int result) {
+        if (oldValue == result) {
+            return;
         }
+        if (slot.stats != null) {
+            slot.stats.onWeightChanged(oldValue, result, minWeight);
+        }
+        // a transition publishes its own event instead, see afterReduced and afterRecovered.
+        if (publishWeightChanged && oldValue > 0 && result > 0 && result != minWeight) {
+            eventDispatcher.publish(slot, new WeightEvent<>(WEIGHT_CHANGED, slot.object, oldValue, result));
+        }
+    }
 
-
-        if (filter == null) {
-            return allAvailable.allAvailable;
-        } else {
-            if (refreshed) {
-                return allAvailable.allAvailable;
-            } else {
-                return doGetAvailable();
+    /**
+     * side effects of fail/down, run after the new weight was published and outside of any lock.
+     */
+    private void afterReduced(Slot<T> slot, int oldValue, int result) {
+        T object = slot.object;
+        if (result == minWeight && result != oldValue) {
+            if (eventDispatcher != null) {
+                eventDispatcher.publish(slot, new WeightEvent<>(MIN_WEIGHT, object, oldValue, result));
+            } else if (onMinWeight != null) {
+                onMinWeight.accept(object);
             }
         }
+        if (result == 0) {
+            if (oldValue != 0) {
+                logger.warn("found down object:{}", object);
+                if (eventDispatcher != null) {
+                    eventDispatcher.publish(slot, new WeightEvent<>(DOWN, object, oldValue, result));
+                }
+                if (sharedMember != null) {
+                    sharedMember.down(object);
+                }
+            }
+            checkTask.onDown();
+        }
+    }
+
+    /**
+     * side effects of success from zero weight, the same as a recovery by checks.
+     */
+    private void afterRecovered(Slot<T> slot, int result) {
+        checkTask.afterRecovered(slot, result, (double) result / slot.initWeight);
     }
 
-    private List<T> doGetAvailable() {
-        List<T> result = new ArrayList<>(currentWeightMap.size());
-        for (Entry<T, Integer> entry : currentWeightMap.entrySet()) {
-            T item = entry.getKey();
-            if (entry.getValue() > 0 && (filter == null || filter.test(item))) {
-                result.add(item);
+    @Override
+    public List<T> getAvailable() {
+        return getAvailable(weightTable.snapshot());
+    }
+
+    private List<T> getAvailable(WeightSnapshot<T> snapshot) {
+        List<T> available = snapshot.available;
+        if (filter == null) {
+            return available;
+        }
+        List<T> result = new ArrayList<>(available.size());
+        for (T obj : available) {
+            if (filter.test(obj)) {
+                result.add(obj);
             }
         }
         return unmodifiableList(result);
@@ -234,114 +467,398 @@ public class WeightFailover<T> implements Failover<T>, Closeable {
 
     @Override
     public T getOneAvailable() {
-        // TODO better using a snapshot current Weight<T> or a new stateful Weight<T>
-        List<T> available = getAvailable(1);
-        return available.isEmpty() ? null : available.get(0);
+        T passive = passivePick(emptySet());
+        if (passive != null) {
+            return passive;
+        }
+        return getOneAvailableExclude(emptySet());
     }
 
     @Override
     public List<T> getAvailableExclude(Collection<T> exclusions) {
-        return getAvailable(MAX_VALUE, exclusions);
+        return getAvailable(weightTable.snapshot(), MAX_VALUE, exclusions);
     }
 
     @Nullable
     @Override
     public T getOneAvailableExclude(Collection<T> exclusions) {
-        List<T> result = getAvailable(1, exclusions);
+        T passive = passivePick(exclusions);
+        if (passive != null) {
+            return passive;
+        }
+        return getOneAvailableExclude(weightTable.snapshot(), exclusions);
+    }
+
+    /**
+     * @return a down object for passive recovery, {@code null} for most of the calls.
+     */
+    @Nullable
+    private T passivePick(Collection<T> exclusions) {
+        if (passiveRecoveryRatio == 0 || ThreadLocalRandom.current().nextDouble() >= passiveRecoveryRatio) {
+            return null;
+        }
+        T object = weightTable.randomFailed();
+        if (object == null || !accept(object, exclusions)) {
+            return null;
+        }
+        Slot<T> slot = weightTable.get(object);
+        if (slot == null || slot.currentWeight != 0 || !slot.passiveLimiter.tryAcquire()) {
+            return null;
+        }
+        return select(slot);
+    }
+
+    @Nullable
+    private T getOneAvailableExclude(WeightSnapshot<T> snapshot, Collection<T> exclusions) {
+        if (snapshot.aliasTable == null) {
+            return null;
+        }
+        if (filter == null && exclusions.isEmpty()) {
+            return select(snapshot.pick());
+        }
+        // rejection sampling keeps the same distribution as filtering before picking.
+        for (int i = 0; i < FILTER_PICK_TRIES; i++) {
+            Slot<T> slot = snapshot.pick();
+            if (accept(slot.object, exclusions)) {
+                return select(slot);
+            }
+        }
+        // most of the weight was filtered, fallback to a single pass, without copying the tree.
+        List<T> result = getAvailableByReservoir(snapshot, 1, exclusions);
         return result.isEmpty() ? null : result.get(0);
     }
 
     @Override
     public List<T> getAvailable(int n) {
-        return getAvailable(n, emptySet());
-    }
-
-    private List<T> getAvailable(int n, Collection<T> exclusions) {
-        List<TwoTuple<T, Integer>> snapshot = new LinkedList<>();
-        int sum = 0;
-        for (Entry<T, Integer> entry : currentWeightMap.entrySet()) {
-            int thisWeight = entry.getValue();
-            snapshot.add(tuple(entry.getKey(), thisWeight));
-            sum += thisWeight;
-        }
-        List<T> result = new ArrayList<>();
-        if (sum > 0) {
-            int size = snapshot.size();
-            for (int i = 0; i < size; i++) {
-                if (sum == 0) {
-                    break;
-                }
-                if (result.size() == n) {
-                    break;
-                }
-                int left = ThreadLocalRandom.current().nextInt(sum);
-                Iterator<TwoTuple<T, Integer>> iterator = snapshot.iterator();
-                while (iterator.hasNext()) {
-                    TwoTuple<T, Integer> candidate = iterator.next();
-                    int entryWeight = candidate.getSecond();
-                    if (left < entryWeight) {
-                        T obj = candidate.getFirst();
-                        if (!exclusions.contains(obj) && (filter == null || filter.test(obj))) {
-                            result.add(obj);
-                        }
-                        if (result.size() == n) {
-                            break;
-                        }
-                        iterator.remove();
-                        sum -= entryWeight;
-                        break;
-                    }
-                    left -= entryWeight;
+        return getAvailable(weightTable.snapshot(), n, emptySet());
+    }
+
+    /**
+     * weighted sampling without replacement, O(log n) for each pick,
+     * or a single pass reservoir sampling for large {@code n}.
+     */
+    private List<T> getAvailable(WeightSnapshot<T> snapshot, int n, Collection<T> exclusions) {
+        if (snapshot.aliasTable == null || n <= 0) {
+            return new ArrayList<>(0);
+        }
+        if (n >= RESERVOIR_MIN_PICKS) {
+            return getAvailableByReservoir(snapshot, n, exclusions);
+        }
+        FenwickTree tree = snapshot.fenwickTree.copy();
+        for (T excluded : exclusions) {
+            Slot<T> slot = weightTable.get(excluded);
+            if (isIn(snapshot, slot)) {
+                tree.remove(slot.index);
+            }
+        }
+        List<T> result = new ArrayList<>(min(n, tree.size()));
+        while (result.size() < n && !tree.isEmpty()) {
+            int index = tree.next();
+            tree.remove(index);
+            Slot<T> slot = snapshot.slots[index];
+            if (filter == null || filter.test(slot.object)) {
+                result.add(select(slot));
+            }
+        }
+        return result;
+    }
+
+    private List<T> getAvailableByReservoir(WeightSnapshot<T> snapshot, int n, Collection<T> exclusions) {
+        double[] weights = snapshot.selectWeights;
+        BitSet excluded = null;
+        if (!exclusions.isEmpty()) {
+            excluded = new BitSet(weights.length);
+            for (T obj : exclusions) {
+                Slot<T> slot = weightTable.get(obj);
+                if (isIn(snapshot, slot)) {
+                    excluded.set(slot.index);
                 }
             }
         }
+        BitSet finalExcluded = excluded;
+        int[] indexes = WeightedReservoir.sample(weights, n, index -> (finalExcluded == null
+                || !finalExcluded.get(index)) && (filter == null || filter.test(snapshot.slots[index].object)));
+        List<T> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            result.add(select(snapshot.slots[index]));
+        }
         return result;
     }
 
+    /**
+     * an index may be reused after the snapshot was built, so check the slot itself.
+     */
+    private static <T> boolean isIn(WeightSnapshot<T> snapshot, @Nullable Slot<T> slot) {
+        return slot != null && slot.index < snapshot.weights.length && snapshot.slots[slot.index] == slot;
+    }
+
+    private T select(Slot<T> slot) {
+        if (slot.stats != null) {
+            slot.stats.selections.increment();
+        }
+        return slot.object;
+    }
+
+    private boolean accept(T obj, Collection<T> exclusions) {
+        return !exclusions.contains(obj) && (filter == null || filter.test(obj));
+    }
+
     @Override
     public void success(T object) {
-        boolean[] availableChanged = { false };
-        currentWeightMap.compute(object, (k, oldValue) -> {
-            if (oldValue == null) {
-                if (weightOnMissingNode == null) {
-                    logger.warn("invalid fail obj:{}, it's not in original list.", object);
-                    return null;
-                } else {
-                    availableChanged[0] = true;
-                    oldValue = weightOnMissingNode;
-                    initWeightMap.putIfAbsent(object, weightOnMissingNode);
-                }
-            }
-            int initWeight = initWeightMap.get(k);
-            int weight = min(initWeight, oldValue + successIncreaseWeight.applyAsInt(initWeight));
-            if (oldValue <= 0 && weight > 0) {
-                availableChanged[0] = true;
+        Slot<T> slot = slot(object);
+        if (slot == null) {
+            return;
+        }
+        success(slot);
+    }
+
+    /**
+     * the latency is used only if {@link WeightFailoverBuilder#latencyAware} is on.
+     */
+    @Override
+    public void success(@Nonnull T object, long latencyNanos) {
+        Slot<T> slot = slot(object);
+        if (slot == null) {
+            return;
+        }
+        if (slot.latency != null) {
+            slot.latency.update(latencyNanos);
+            weightTable.markDirty();
+        }
+        success(slot);
+    }
+
+    private void success(Slot<T> slot) {
+        if (slot.stats != null) {
+            slot.stats.successes.increment();
+        }
+        if (passiveRecover(slot)) {
+            return;
+        }
+        int initWeight = slot.initWeight;
+        int oldValue;
+        int weight;
+        do {
+            oldValue = slot.currentWeight;
+            if (oldValue >= initWeight) {
+                // most of calls are on a healthy object, there is no write at all.
+                return;
             }
-            return weight;
-        });
-        if (availableChanged[0]) {
-            allAvailableVersion.incrementAndGet();
+            weight = min(initWeight, oldValue + successIncreaseWeight.applyAsInt(initWeight));
+        } while (!slot.compareAndSetWeight(oldValue, weight));
+        weightTable.onWeightChanged(slot, oldValue, weight);
+        afterChanged(slot, oldValue, weight);
+        if (oldValue <= 0) {
+            afterRecovered(slot, weight);
         }
     }
 
+    /**
+     * a success on a down object recovers it by the recovery path of checks if passive recovery is on,
+     * to the weight a success gives. the down object was selected under its rate limit, see {@link #passivePick}.
+     *
+     * @return {@code true} if it's recovered.
+     */
+    private boolean passiveRecover(Slot<T> slot) {
+        if (passiveRecoveryRatio == 0 || slot.currentWeight != 0) {
+            return false;
+        }
+        int initWeight = slot.initWeight;
+        if (checkTask.recover(slot, (double) successIncreaseWeight.applyAsInt(initWeight) / initWeight)) {
+            logger.info("found recovered object:{} by passive recovery", slot.object);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public Set<T> getFailed() {
-        return currentWeightMap.entrySet().stream()
-                .filter(entry -> entry.getValue() == 0)
-                .map(Entry::getKey)
-                .collect(toSet());
+        return weightTable.failed();
+    }
+
+    /**
+     * @return count of objects with zero weight, it's cheaper than {@code getFailed().size()}.
+     */
+    public int failedCount() {
+        return weightTable.failedCount();
+    }
+
+    /**
+     * @return count of objects with positive weight, regardless of the filter.
+     */
+    public int availableCount() {
+        return Math.max(0, weightTable.size() - weightTable.failedCount());
+    }
+
+    /**
+     * A view of this failover which only selects objects matching {@code predicate},
+     * e.g. objects with a tag or in a partition.
+     *
+     * The filtered selection snapshot is cached by {@code key}, and rebuilt only when the selection
+     * snapshot of this failover changed, so a filtered selection costs the same as an unfiltered one.
+     * The predicate must always give the same result for the same key, and the keys should be bounded.
+     * For a predicate depending on the call context (e.g. a thread local), use {@link WeightFailoverBuilder#filter}.
+     *
+     * fail/success/down on the view are applied to this failover.
+     */
+    @Nonnull
+    public Failover<T> filtered(@Nonnull Object key, @Nonnull Predicate<? super T> predicate) {
+        checkNotNull(key);
+        checkNotNull(predicate);
+        return filteredViews.computeIfAbsent(key, k -> new FilteredView(predicate));
+    }
+
+    @SuppressWarnings("checkstyle:VisibilityModifier")
+    private static class FilteredSnapshot<T> {
+        final WeightSnapshot<T> base;
+        final WeightSnapshot<T> filtered;
+
+        FilteredSnapshot(WeightSnapshot<T> base, Predicate<? super T> predicate,
+                @Nullable FilteredSnapshot<T> previous) {
+            this.base = base;
+            this.filtered = base.filter(predicate, previous == null ? null : previous.filtered);
+        }
+    }
+
+    private class FilteredView implements Failover<T> {
+
+        private final Predicate<? super T> predicate;
+        private volatile FilteredSnapshot<T> snapshot;
+
+        FilteredView(Predicate<? super T> predicate) {
+            this.predicate = predicate;
+            this.snapshot = new FilteredSnapshot<>(weightTable.snapshot(), predicate, null);
+        }
+
+        private WeightSnapshot<T> snapshot() {
+            WeightSnapshot<T> base = weightTable.snapshot();
+            FilteredSnapshot<T> current = snapshot;
+            if (current.base != base) {
+                current = new FilteredSnapshot<>(base, predicate, current);
+                snapshot = current;
+            }
+            return current.filtered;
+        }
+
+        @Override
+        public List<T> getAll() {
+            return WeightFailover.this.getAll().stream()
+                    .filter(predicate)
+                    .collect(toList());
+        }
+
+        @Override
+        public void success(@Nonnull T object) {
+            WeightFailover.this.success(object);
+        }
+
+        @Override
+        public void success(@Nonnull T object, long latencyNanos) {
+            WeightFailover.this.success(object, latencyNanos);
+        }
+
+        @Override
+        public void fail(@Nonnull T object) {
+            WeightFailover.this.fail(object);
+        }
+
+        @Override
+        public void down(@Nonnull T object) {
+            WeightFailover.this.down(object);
+        }
+
+        @Override
+        public List<T> getAvailable() {
+            return WeightFailover.this.getAvailable(snapshot());
+        }
+
+        @Override
+        public List<T> getAvailableExclude(Collection<T> exclusions) {
+            return WeightFailover.this.getAvailable(snapshot(), MAX_VALUE, exclusions);
+        }
+
+        @Override
+        public Set<T> getFailed() {
+            return snapshot().failed;
+        }
+
+        @Nullable
+        @Override
+        public T getOneAvailable() {
+            return getOneAvailableExclude(emptySet());
+        }
+
+        @Nullable
+        @Override
+        public T getOneAvailableExclude(Collection<T> exclusions) {
+            return WeightFailover.this.getOneAvailableExclude(snapshot(), exclusions);
+        }
+
+        @Override
+        public List<T> getAvailable(int n) {
+            return WeightFailover.this.getAvailable(snapshot(), n, emptySet());
+        }
+
+        @Override
+        public String toString() {
+            return "FilteredView@" + WeightFailover.this;
+        }
+    }
+
+    /**
+     * replaces all resources by {@code newWeightMap} at once, without rebuilding the failover:
+     * kept resources keep their health (the current weight is scaled if the init weight changed),
+     * removed resources are not selected or checked any more, and new resources are added as
+     * {@link WeightFailoverBuilder#autoAddOnMissing} does.
+     * the selection snapshot changes only once.
+     */
+    public void updateResources(@Nonnull Map<T, Integer> newWeightMap) {
+        checkNotNull(newWeightMap);
+        newWeightMap.forEach((object, weight) -> {
+            checkNotNull(object);
+            checkArgument(weight != null && weight > 0, "invalid weight:%s of %s", weight, object);
+        });
+        weightTable.update(newWeightMap);
+    }
+
+    /**
+     * @return stats of all resources, it can be called at any time without stopping writers.
+     * @throws IllegalStateException if stats recording is off, see {@link WeightFailoverBuilder#recordStats()}.
+     */
+    @Nonnull
+    public Map<T, ResourceStats> stats() {
+        ImmutableMap.Builder<T, ResourceStats> result = ImmutableMap.builder();
+        for (Slot<T> slot : weightTable.slots()) {
+            if (slot != null) {
+                checkState(slot.stats != null, "stats recording is off.");
+                result.put(slot.object, slot.stats.snapshot(slot));
+            }
+        }
+        return result.build();
+    }
+
+    boolean contains(T obj) {
+        return weightTable.get(obj) != null;
+    }
+
+    /**
+     * @return {@code true} if {@code obj} is the only available object, the filter is not applied.
+     */
+    boolean isOnlyAvailable(T obj) {
+        List<T> available = weightTable.snapshot().available;
+        return available.size() == 1 && available.get(0).equals(obj);
     }
 
     int currentWeight(T obj) {
-        return currentWeightMap.get(obj);
+        return weightTable.get(obj).currentWeight;
     }
 
     int initWeight(T obj) {
-        return initWeightMap.get(obj);
+        return weightTable.get(obj).initWeight;
     }
 
     @Override
     public String toString() {
-        return "WeightFailover [" + initWeightMap + "]" + "@" + Integer.toHexString(hashCode());
+        return "WeightFailover [" + weightTable + "]" + "@" + Integer.toHexString(hashCode());
     }
 }
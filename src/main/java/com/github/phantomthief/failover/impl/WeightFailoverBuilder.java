@@ -2,6 +2,7 @@ package com.github.phantomthief.failover.impl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toMap;
@@ -9,8 +10,11 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
 import java.util.function.Predicate;
 import java.util.function.ToDoubleFunction;
@@ -21,6 +25,10 @@ import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 
+import com.github.phantomthief.failover.util.CheckExecutor;
+import com.github.phantomthief.failover.util.HashedWheelCheckScheduler;
+import com.github.phantomthief.failover.util.SharedCheckExecutorHolder;
+import com.github.phantomthief.failover.util.SharedListenerExecutorHolder;
 import com.github.phantomthief.util.ThrowableFunction;
 import com.github.phantomthief.util.ThrowablePredicate;
 
@@ -33,18 +41,40 @@ public class WeightFailoverBuilder<T> {
     private static final int DEFAULT_FAIL_REDUCE_WEIGHT = 5;
     private static final int DEFAULT_SUCCESS_INCREASE_WEIGHT = 1;
     private static final long DEFAULT_CHECK_DURATION = SECONDS.toMillis(1);
+    private static final long DEFAULT_LATENCY_REFRESH_INTERVAL = MILLISECONDS.toNanos(100);
+    private static final int DEFAULT_LISTENER_QUEUE_CAPACITY = 1024;
+    static final int DEFAULT_CHECK_PARALLELISM = 8;
+    static final long DEFAULT_CHECK_TIMEOUT = SECONDS.toNanos(10);
 
     IntUnaryOperator failReduceWeight;
     IntUnaryOperator successIncreaseWeight;
 
     Map<T, Integer> initWeightMap;
     ToDoubleFunction<T> checker;
+    Function<T, CompletableFuture<Double>> asyncChecker;
+    int checkParallelism;
+    long checkTimeoutNanos;
     long checkDuration;
+    long maxCheckIntervalMillis;
+    CheckExecutor checkExecutor;
+    boolean timingWheel;
+    double passiveRecoveryRatio;
+    double passiveRecoveryPermits;
+    SharedHealthRegistry sharedHealth;
+    Function<? super T, ?> healthKey;
     Consumer<T> onMinWeight;
     Consumer<T> onRecovered;
+    Consumer<WeightEvent<T>> onEvent;
+    int listenerQueueCapacity;
+    Executor listenerExecutor;
     int minWeight = 0;
     Integer weightOnMissingNode;
     String name;
+    long weightRefreshIntervalNanos = -1;
+    boolean recordStats;
+    long latencyDecayNanos;
+    SlowStartRamp slowStartRamp;
+    long slowStartNanos;
 
     Predicate<T> filter;
 
@@ -74,6 +104,9 @@ public class WeightFailoverBuilder<T> {
         return thisBuilder;
     }
 
+    /**
+     * called once an object is recovered from zero weight, by the checker or by success.
+     */
     @CheckReturnValue
     @SuppressWarnings("unchecked")
     @Nonnull
@@ -84,6 +117,45 @@ public class WeightFailoverBuilder<T> {
         return thisBuilder;
     }
 
+    /**
+     * listens all weight transitions, it's always called asynchronously, see {@link #asyncListeners(int)}.
+     */
+    @CheckReturnValue
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public <E> WeightFailoverBuilder<E> onEvent(@Nonnull Consumer<WeightEvent<E>> listener) {
+        checkNotNull(listener);
+        WeightFailoverBuilder<E> thisBuilder = (WeightFailoverBuilder<E>) this;
+        thisBuilder.onEvent = listener;
+        return thisBuilder;
+    }
+
+    /**
+     * @see #asyncListeners(int, Executor)
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> asyncListeners(int queueCapacity) {
+        return asyncListeners(queueCapacity, SharedListenerExecutorHolder.getInstance());
+    }
+
+    /**
+     * call onMinWeight/onRecovered/onEvent listeners on {@code executor} instead of the thread changing the weight,
+     * so a slow listener never blocks fail/down or the checker.
+     * events wait in a queue of {@code queueCapacity}, the oldest one is dropped if it's full,
+     * and WEIGHT_CHANGED events of an object not dispatched yet are coalesced.
+     * default is on with a capacity of 1024 if {@link #onEvent} is set, or off.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> asyncListeners(int queueCapacity, @Nonnull Executor executor) {
+        checkArgument(queueCapacity > 0);
+        checkNotNull(executor);
+        this.listenerQueueCapacity = queueCapacity;
+        this.listenerExecutor = executor;
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public WeightFailoverBuilder<T> minWeight(int value) {
@@ -124,6 +196,10 @@ public class WeightFailoverBuilder<T> {
         return this;
     }
 
+    /**
+     * interval between check rounds of down objects, each one is randomized by 25%,
+     * so failovers created at the same time don't check in lockstep.
+     */
     @CheckReturnValue
     @Nonnull
     public WeightFailoverBuilder<T> checkDuration(long time, TimeUnit unit) {
@@ -133,6 +209,188 @@ public class WeightFailoverBuilder<T> {
         return this;
     }
 
+    /**
+     * an object failing checks is checked less and less often:
+     * the interval doubles after each failed check, from {@link #checkDuration} up to {@code maxInterval},
+     * randomized in [interval/2, interval], and it's reset once the object is recovered.
+     * so a decommissioned object costs almost nothing, and checks of objects down together are spread.
+     * default is off, means checking every down object on each {@link #checkDuration}.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> checkBackoff(long maxInterval, TimeUnit unit) {
+        checkNotNull(unit);
+        checkArgument(maxInterval > 0);
+        maxCheckIntervalMillis = unit.toMillis(maxInterval);
+        return this;
+    }
+
+    /**
+     * run a blocking {@link #checker} on {@code executor} instead of the shared scheduler thread,
+     * e.g. {@link CheckExecutor#isolated} for failovers of the same backend,
+     * so a hung checker only delays checks of its own group.
+     * checks are run in parallel then, see {@link #checkParallelism}.
+     * default is {@link CheckExecutor#shared()} if checks are in parallel, with timeout or on {@link #timingWheel},
+     * or the scheduler thread.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> checkExecutor(@Nonnull CheckExecutor executor) {
+        checkNotNull(executor);
+        checkExecutor = executor;
+        return this;
+    }
+
+    /**
+     * schedule checks on {@link HashedWheelCheckScheduler} instead of {@link SharedCheckExecutorHolder},
+     * for lots of failovers in a JVM: a check round is only scheduled while any object is down,
+     * and all failovers on it share the probe limit of {@link HashedWheelCheckScheduler#setProbeRateLimit}.
+     * a blocking {@link #checker} is run on {@link #checkExecutor} then, as with {@link #checkParallelism}.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> timingWheel() {
+        timingWheel = true;
+        return this;
+    }
+
+    /**
+     * for resources which can't be checked without a real request: about {@code ratio} of
+     * {@link WeightFailover#getOneAvailable()} and {@link WeightFailover#getOneAvailableExclude} calls
+     * return a random down object instead, and a success on it recovers it.
+     * a down object is returned at most {@code permitsPerSecond} times per second,
+     * so a still dead one only gets a bounded number of requests.
+     * the checker is optional if it's on.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> passiveRecovery(double ratio, double permitsPerSecond) {
+        checkArgument(ratio > 0 && ratio <= 1);
+        checkArgument(permitsPerSecond > 0);
+        passiveRecoveryRatio = ratio;
+        passiveRecoveryPermits = permitsPerSecond;
+        return this;
+    }
+
+    /**
+     * shares health of objects with other failovers on the {@code registry}, objects are identified by themselves.
+     *
+     * @see SharedHealthRegistry
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> sharedHealth(@Nonnull SharedHealthRegistry registry) {
+        checkNotNull(registry);
+        sharedHealth = registry;
+        healthKey = null;
+        return this;
+    }
+
+    /**
+     * @param keyFunction identity of an object in the {@code registry}, e.g. the host and port of a connection pool.
+     * @see SharedHealthRegistry
+     */
+    @SuppressWarnings("unchecked")
+    @CheckReturnValue
+    @Nonnull
+    public <E> WeightFailoverBuilder<E> sharedHealth(@Nonnull SharedHealthRegistry registry,
+            @Nonnull Function<? super E, ?> keyFunction) {
+        checkNotNull(registry);
+        checkNotNull(keyFunction);
+        WeightFailoverBuilder<E> thisBuilder = (WeightFailoverBuilder<E>) this;
+        thisBuilder.sharedHealth = registry;
+        thisBuilder.healthKey = keyFunction;
+        return thisBuilder;
+    }
+
+    /**
+     * check at most {@code parallelism} down objects at the same time in a round,
+     * a blocking {@link #checker} is run on {@link #checkExecutor} then.
+     * a new round is not started until the last one finished.
+     * default is 1, means checking one by one on the scheduler thread,
+     * or 8 if {@link #asyncChecker} or {@link #timingWheel} is set.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> checkParallelism(int parallelism) {
+        checkArgument(parallelism > 0);
+        checkParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * a check not completed in {@code time} is cancelled and taken as not recovered.
+     * a blocking {@link #checker} is interrupted then, and an {@link #asyncChecker} gets its future cancelled.
+     * default is no timeout for a blocking checker checked one by one, or 10 seconds otherwise.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> checkTimeout(long time, TimeUnit unit) {
+        checkNotNull(unit);
+        checkArgument(time > 0);
+        checkTimeoutNanos = unit.toNanos(time);
+        return this;
+    }
+
+    /**
+     * weight changes which don't make an object available or unavailable
+     * are applied to selection at most once per {@code time}, to reduce rebuilding during error storms.
+     * available/unavailable transitions are always applied at once.
+     * default is 0, means all changes are applied at once, or 100ms if {@link #latencyAware} is on.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> weightRefreshInterval(long time, TimeUnit unit) {
+        checkNotNull(unit);
+        checkArgument(time >= 0);
+        weightRefreshIntervalNanos = unit.toNanos(time);
+        return this;
+    }
+
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> latencyAware(long decayTime, TimeUnit unit) {
+        checkNotNull(unit);
+        checkArgument(decayTime > 0);
+        latencyDecayNanos = unit.toNanos(decayTime);
+        return this;
+    }
+
+    /**
+     * @see #slowStart(long, TimeUnit, SlowStartRamp)
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> slowStart(long window, TimeUnit unit) {
+        return slowStart(window, unit, SlowStartRamp.LINEAR);
+    }
+
+    /**
+     * the selection weight of a recovered or auto added object ramps from 10% to full in {@code window},
+     * so a cold backend is not overwhelmed at once.
+     * the current weight is not affected, the ramp is computed from the recovery time on snapshot rebuilding.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> slowStart(long window, TimeUnit unit, @Nonnull SlowStartRamp ramp) {
+        checkNotNull(unit);
+        checkNotNull(ramp);
+        checkArgument(window > 0);
+        slowStartNanos = unit.toNanos(window);
+        slowStartRamp = ramp;
+        return this;
+    }
+
+    /**
+     * record per resource counters, which can be read by {@link WeightFailover#stats()}.
+     */
+    @CheckReturnValue
+    @Nonnull
+    public WeightFailoverBuilder<T> recordStats() {
+        recordStats = true;
+        return this;
+    }
+
     @CheckReturnValue
     @Nonnull
     public <E> WeightFailoverBuilder<E> filter(@Nonnull Predicate<E> filter) {
@@ -162,6 +420,22 @@ public class WeightFailoverBuilder<T> {
         return thisBuilder;
     }
 
+    /**
+     * a non blocking checker, the future completes with the recover rate as {@link #checker(ThrowableFunction)}.
+     * an exceptionally completed future is taken as 0.
+     * the future is cancelled on {@link #checkTimeout}, so the checker should release its resources then.
+     */
+    @SuppressWarnings("unchecked")
+    @CheckReturnValue
+    @Nonnull
+    public <E> WeightFailoverBuilder<E> asyncChecker(
+            @Nonnull Function<? super E, CompletableFuture<Double>> failChecker) {
+        checkNotNull(failChecker);
+        WeightFailoverBuilder<E> thisBuilder = (WeightFailoverBuilder<E>) this;
+        thisBuilder.asyncChecker = (Function<E, CompletableFuture<Double>>) failChecker;
+        return thisBuilder;
+    }
+
     @SuppressWarnings("unchecked")
     @CheckReturnValue
     @Nonnull
@@ -201,9 +475,11 @@ public class WeightFailoverBuilder<T> {
 
     private void ensure() {
         if (minWeight <= 0) { // if min weight>0, there is no checker need.
-            checkNotNull(checker);
+            if (asyncChecker == null && passiveRecoveryRatio == 0) {
+                checkNotNull(checker);
+            }
         } else {
-            if (checker != null) {
+            if (checker != null || asyncChecker != null) {
                 logger.warn(
                         "a failover checker found but minWeight>0. the checker would never reached.");
             }
@@ -217,5 +493,15 @@ public class WeightFailoverBuilder<T> {
         if (checkDuration == 0) {
             checkDuration = DEFAULT_CHECK_DURATION;
         }
+        if (maxCheckIntervalMillis > 0) {
+            maxCheckIntervalMillis = Math.max(maxCheckIntervalMillis, checkDuration);
+        }
+        if (onEvent != null && listenerQueueCapacity == 0) {
+            listenerQueueCapacity = DEFAULT_LISTENER_QUEUE_CAPACITY;
+            listenerExecutor = SharedListenerExecutorHolder.getInstance();
+        }
+        if (weightRefreshIntervalNanos < 0) {
+            weightRefreshIntervalNanos = latencyDecayNanos > 0 ? DEFAULT_LATENCY_REFRESH_INTERVAL : 0;
+        }
     }
 }
\ No newline at end of file
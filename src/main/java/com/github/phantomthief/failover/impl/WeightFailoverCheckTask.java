@@ -1,22 +1,41 @@
 package com.github.phantomthief.failover.impl;
 
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.RECOVERED;
 import static com.github.phantomthief.util.MoreSuppliers.lazy;
 import static com.google.common.primitives.Ints.constrainToRange;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
+import com.github.phantomthief.failover.util.CheckExecutor;
+import com.github.phantomthief.failover.util.HashedWheelCheckScheduler;
+import com.github.phantomthief.failover.util.HashedWheelCheckScheduler.Timeout;
 import com.github.phantomthief.failover.util.SharedCheckExecutorHolder;
 import com.github.phantomthief.util.MoreSuppliers.CloseableSupplier;
 
@@ -32,6 +51,10 @@ class WeightFailoverCheckTask<T> {
 
     static final int CLEAN_INIT_DELAY_SECONDS = 5;
     private static final int CLEAN_DELAY_SECONDS = 10;
+    /**
+     * the interval stops growing after so many failed checks, it's far beyond any reasonable max interval.
+     */
+    private static final int MAX_BACKOFF_SHIFT = 30;
 
     static {
         SharedCheckExecutorHolder.getInstance().scheduleWithFixedDelay(WeightFailoverCheckTask::doClean,
@@ -41,11 +64,34 @@ class WeightFailoverCheckTask<T> {
     private final String failoverName;
     private final WeightFailoverBuilder<T> builder;
     private final AtomicBoolean closed;
-    private final ConcurrentMap<T, Integer> initWeightMap;
-    private final ConcurrentMap<T, Integer> currentWeightMap;
-    private final AtomicInteger allAvailableVersion;
+    private final WeightTable<T> weightTable;
+    @Nullable
+    private final EventDispatcher<T> eventDispatcher;
+    @Nullable
+    private final WeightFailover.SharedMember<T> sharedMember;
+    /**
+     * {@code null} if the blocking checker is run one by one on the scheduler thread.
+     */
+    @Nullable
+    private final Function<T, CompletableFuture<Double>> asyncChecker;
+    private final int checkParallelism;
+    private final long checkTimeoutNanos;
 
     private final CloseableSupplier<ScheduledFuture<?>> recoveryFuture;
+    /**
+     * {@code null} if checks are scheduled by {@link SharedCheckExecutorHolder}.
+     */
+    @Nullable
+    private final HashedWheelCheckScheduler wheel;
+    /**
+     * the schedule of {@link #recoveryFuture} on the wheel, {@code null} if {@link #wheel} is.
+     */
+    @Nullable
+    private final WheelSchedule wheelSchedule;
+    /**
+     * {@code true} while a round of async checks is running.
+     */
+    private final AtomicBoolean checking = new AtomicBoolean();
 
     // we need keep reference of this object
     private final MyPhantomReference<T> phantomReference;
@@ -62,16 +108,30 @@ class WeightFailoverCheckTask<T> {
     }
 
     WeightFailoverCheckTask(WeightFailover<T> failover, WeightFailoverBuilder<T> builder, AtomicBoolean closed,
-            ConcurrentMap<T, Integer> initWeightMap, ConcurrentMap<T, Integer> currentWeightMap,
-            AtomicInteger allAvailableVersion) {
+            WeightTable<T> weightTable, @Nullable EventDispatcher<T> eventDispatcher,
+            @Nullable WeightFailover.SharedMember<T> sharedMember) {
         this.failoverName = failover.toString();
         this.builder = builder;
         this.closed = closed;
-        this.initWeightMap = initWeightMap;
-        this.currentWeightMap = currentWeightMap;
-        this.allAvailableVersion = allAvailableVersion;
-        this.recoveryFuture = lazy(() -> SharedCheckExecutorHolder.getInstance().scheduleWithFixedDelay(
-                this::run, builder.checkDuration, builder.checkDuration, MILLISECONDS));
+        this.weightTable = weightTable;
+        this.eventDispatcher = eventDispatcher;
+        this.sharedMember = sharedMember;
+        // computed here instead of on the builder, so a builder built twice doesn't keep the first ones.
+        this.asyncChecker = asyncChecker(builder);
+        this.checkParallelism = builder.checkParallelism > 0 ? builder.checkParallelism
+                : WeightFailoverBuilder.DEFAULT_CHECK_PARALLELISM;
+        this.checkTimeoutNanos = builder.checkTimeoutNanos > 0 ? builder.checkTimeoutNanos
+                : WeightFailoverBuilder.DEFAULT_CHECK_TIMEOUT;
+        this.wheel = builder.timingWheel ? HashedWheelCheckScheduler.getInstance() : null;
+        if (wheel != null) {
+            // nothing is on the wheel until it's armed.
+            WheelSchedule schedule = new WheelSchedule();
+            this.wheelSchedule = schedule;
+            this.recoveryFuture = lazy(() -> schedule);
+        } else {
+            this.wheelSchedule = null;
+            this.recoveryFuture = lazy(ExecutorSchedule::new);
+        }
 
         phantomReference = new MyPhantomReference<>(failover, REF_QUEUE, this);
     }
@@ -88,6 +148,191 @@ class WeightFailoverCheckTask<T> {
         return recoveryFuture;
     }
 
+    /**
+     * should be called after an object is down, it starts checking if it's not.
+     */
+    void onDown() {
+        if (builder.checker == null && asyncChecker == null) {
+            return; // passive recovery only
+        }
+        // initialized, so it's cancelled on close.
+        recoveryFuture.get();
+        if (wheelSchedule != null) {
+            wheelSchedule.arm();
+        }
+    }
+
+    /**
+     * a random phase, so failovers created or down at the same time don't check in lockstep.
+     */
+    private long firstDelay() {
+        return 1 + ThreadLocalRandom.current().nextLong(builder.checkDuration);
+    }
+
+    /**
+     * {@link WeightFailoverBuilder#checkDuration} randomized by 25%, so failovers with close phases drift apart.
+     */
+    private long nextDelay() {
+        return jittered(builder.checkDuration);
+    }
+
+    static long jittered(long duration) {
+        return Math.max(1, duration - duration / 4 + ThreadLocalRandom.current().nextLong(duration / 2 + 1));
+    }
+
+    /**
+     * Periodic checks, each round is scheduled after the last one with a random delay,
+     * so it's never done until it's cancelled.
+     */
+    private abstract class CheckSchedule implements ScheduledFuture<Object> {
+
+        private final CountDownLatch cancelledLatch = new CountDownLatch(1);
+        volatile boolean cancelled;
+
+        abstract void cancelScheduled(boolean mayInterruptIfRunning);
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            cancelScheduled(mayInterruptIfRunning);
+            cancelledLatch.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled;
+        }
+
+        /**
+         * @throws CancellationException after it's cancelled, it blocks until then.
+         */
+        @Override
+        public Object get() throws InterruptedException {
+            cancelledLatch.await();
+            throw new CancellationException();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            if (!cancelledLatch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            throw new CancellationException();
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(NANOSECONDS), o.getDelay(NANOSECONDS));
+        }
+    }
+
+    /**
+     * Checks on {@link SharedCheckExecutorHolder}, a round is scheduled whether any object is down or not.
+     */
+    private final class ExecutorSchedule extends CheckSchedule {
+
+        private volatile ScheduledFuture<?> scheduled;
+
+        ExecutorSchedule() {
+            schedule(firstDelay());
+        }
+
+        private void schedule(long delayMillis) {
+            scheduled = SharedCheckExecutorHolder.getInstance().schedule(this::tick, delayMillis, MILLISECONDS);
+            if (cancelled) {
+                scheduled.cancel(false);
+            }
+        }
+
+        private void tick() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                run();
+            } finally {
+                if (!cancelled) {
+                    schedule(nextDelay());
+                }
+            }
+        }
+
+        @Override
+        void cancelScheduled(boolean mayInterruptIfRunning) {
+            ScheduledFuture<?> current = scheduled;
+            if (current != null) {
+                current.cancel(mayInterruptIfRunning);
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return scheduled.getDelay(unit);
+        }
+    }
+
+    /**
+     * Checks on {@link HashedWheelCheckScheduler}: a round is scheduled only while any object is down,
+     * so a failover with nothing down has nothing on the wheel.
+     */
+    private final class WheelSchedule extends CheckSchedule {
+
+        private final AtomicBoolean armed = new AtomicBoolean();
+        private volatile Timeout timeout;
+
+        void arm() {
+            if (!cancelled && armed.compareAndSet(false, true)) {
+                schedule(firstDelay());
+            }
+        }
+
+        private void schedule(long delayMillis) {
+            timeout = wheel.newTimeout(this::tick, delayMillis, MILLISECONDS);
+            if (cancelled) {
+                timeout.cancel();
+            }
+        }
+
+        private void tick() {
+            if (cancelled) {
+                return;
+            }
+            run();
+            if (weightTable.failedCount() > 0 || checking.get()) {
+                schedule(nextDelay());
+                return;
+            }
+            armed.set(false);
+            // an object may be down after the count was read, and its arm() was ignored.
+            if (weightTable.failedCount() > 0) {
+                arm();
+            }
+        }
+
+        @Override
+        void cancelScheduled(boolean mayInterruptIfRunning) {
+            Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            Timeout current = timeout;
+            return current == null || !armed.get() ? Long.MAX_VALUE : current.getDelay(unit);
+        }
+    }
+
     private void close() {
         if (!closed.get()) {
             logger.warn("failover not released manually: {}", failoverName);
@@ -96,45 +341,274 @@ class WeightFailoverCheckTask<T> {
         }
     }
 
+    /**
+     * @return the async checker, or the blocking checker run on {@link WeightFailoverBuilder#checkExecutor}
+     * if checks are in parallel, with timeout or on the timing wheel,
+     * {@code null} if checks are run on the scheduler thread.
+     */
+    @Nullable
+    private static <T> Function<T, CompletableFuture<Double>> asyncChecker(WeightFailoverBuilder<T> builder) {
+        if (builder.asyncChecker != null) {
+            return builder.asyncChecker;
+        }
+        // workers of the wheel are shared by all failovers on it, a blocking checker must not run on them.
+        if (builder.checker != null && (builder.checkParallelism > 1 || builder.checkTimeoutNanos > 0
+                || builder.checkExecutor != null || builder.timingWheel)) {
+            return async(builder.checker,
+                    builder.checkExecutor != null ? builder.checkExecutor : CheckExecutor.shared());
+        }
+        return null;
+    }
+
+    /**
+     * runs a blocking checker on {@code executor}, cancelling the returned future interrupts it.
+     */
+    static <T> Function<T, CompletableFuture<Double>> async(ToDoubleFunction<T> checker,
+            CheckExecutor executor) {
+        return object -> {
+            CompletableFuture<Double> result = new CompletableFuture<>();
+            Future<?> task = executor.submit(() -> {
+                try {
+                    result.complete(checker.applyAsDouble(object));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            result.whenComplete((rate, e) -> {
+                if (e instanceof CancellationException) {
+                    task.cancel(true);
+                }
+            });
+            return result;
+        };
+    }
+
     private void run() {
         if (closed.get()) {
             return;
         }
+        if (asyncChecker != null) {
+            runAsync();
+            return;
+        }
         Thread currentThread = Thread.currentThread();
         String origName = currentThread.getName();
         if (builder.name != null) {
             currentThread.setName(origName + "-[" + builder.name + "]");
         }
         try {
-            Map<T, Double> recoveredObjects = new HashMap<>();
-            this.currentWeightMap.forEach((obj, weight) -> {
-                if (weight == 0) {
-                    double recoverRate = builder.checker.applyAsDouble(obj);
+            Map<Slot<T>, Double> recoveredSlots = new HashMap<>();
+            long now = System.nanoTime();
+            for (Slot<T> slot : weightTable.slots()) {
+                if (shouldCheck(slot, now)) {
+                    double recoverRate = builder.checker.applyAsDouble(slot.object);
                     if (recoverRate > 0) {
-                        recoveredObjects.put(obj, recoverRate);
+                        recoveredSlots.put(slot, recoverRate);
+                    } else {
+                        backoff(slot);
                     }
                 }
-            });
-            if (!recoveredObjects.isEmpty()) {
-                logger.info("found recovered objects:{}", recoveredObjects);
             }
-            recoveredObjects.forEach((recovered, rate) -> {
-                Integer initWeight = initWeightMap.get(recovered);
-                if (initWeight == null) {
-                    throw new IllegalStateException("obj:" + recovered);
-                }
-                int recoveredWeight = constrainToRange((int) (initWeight * rate), 1,
-                        initWeight);
-                currentWeightMap.put(recovered, recoveredWeight);
-                allAvailableVersion.incrementAndGet();
-                if (builder.onRecovered != null) {
-                    builder.onRecovered.accept(recovered);
-                }
-            });
+            if (!recoveredSlots.isEmpty()) {
+                logger.info("found recovered objects:{}", recoveredSlots);
+            }
+            recoveredSlots.forEach(this::recover);
         } catch (Throwable e) {
             logger.error("", e);
         } finally {
             currentThread.setName(origName);
         }
     }
+
+    /**
+     * also called for a recovery found by another failover of the {@link SharedHealthRegistry},
+     * or by a success of passive recovery.
+     *
+     * @return {@code false} if it's not down any more.
+     */
+    boolean recover(Slot<T> recovered, double rate) {
+        int initWeight = recovered.initWeight;
+        int recoveredWeight = constrainToRange((int) (initWeight * rate), 1,
+                initWeight);
+        // it may be recovered by success() during checking, keep the newer one.
+        if (!recovered.compareAndSetWeight(0, recoveredWeight)) {
+            return false;
+        }
+        resetBackoff(recovered);
+        weightTable.onWeightChanged(recovered, 0, recoveredWeight);
+        if (recovered.stats != null) {
+            recovered.stats.recoveries.increment();
+            recovered.stats.onWeightChanged(0, recoveredWeight, builder.minWeight);
+        }
+        afterRecovered(recovered, recoveredWeight, rate);
+        return true;
+    }
+
+    /**
+     * side effects of a recovery from zero weight, by a check or by success.
+     */
+    void afterRecovered(Slot<T> recovered, int weight, double rate) {
+        if (eventDispatcher != null) {
+            eventDispatcher.publish(recovered, new WeightEvent<>(RECOVERED, recovered.object, 0, weight));
+        } else if (builder.onRecovered != null) {
+            builder.onRecovered.accept(recovered.object);
+        }
+        if (sharedMember != null) {
+            sharedMember.recovered(recovered.object, rate);
+        }
+    }
+
+    /**
+     * @return {@code true} if the slot is down, it's not in backoff, it's not checked by another failover
+     * of the shared health, and it's not rate limited.
+     */
+    private boolean shouldCheck(Slot<T> slot, long now) {
+        if (slot == null) {
+            return false;
+        }
+        if (slot.currentWeight != 0) {
+            // it may be recovered by success().
+            resetBackoff(slot);
+            return false;
+        }
+        if (builder.maxCheckIntervalMillis > 0 && now - slot.nextCheckNanos < 0) {
+            return false;
+        }
+        if (sharedMember != null && !sharedMember.tryAcquireCheck(slot.object)) {
+            return false;
+        }
+        // skipped checks are retried in the next round.
+        return wheel == null || wheel.tryAcquireProbe();
+    }
+
+    /**
+     * a failed check doubles the interval until the next check of the object,
+     * up to {@link WeightFailoverBuilder#maxCheckIntervalMillis}.
+     * the interval is randomized in [interval/2, interval], so checks of objects down together are spread.
+     */
+    private void backoff(Slot<T> slot) {
+        long maxInterval = builder.maxCheckIntervalMillis;
+        if (maxInterval == 0) {
+            return;
+        }
+        int failedChecks = Math.min(slot.failedChecks + 1, MAX_BACKOFF_SHIFT);
+        slot.failedChecks = failedChecks;
+        long interval = Math.min(maxInterval, builder.checkDuration << failedChecks);
+        long jittered = interval / 2 + ThreadLocalRandom.current().nextLong(interval / 2 + 1);
+        slot.nextCheckNanos = System.nanoTime() + MILLISECONDS.toNanos(jittered);
+    }
+
+    private void resetBackoff(Slot<T> slot) {
+        if (slot.failedChecks != 0) {
+            slot.failedChecks = 0;
+            slot.nextCheckNanos = 0;
+        }
+    }
+
+    /**
+     * starts a round checking all down objects, at most {@link WeightFailoverBuilder#checkParallelism} at a time,
+     * each object is recovered as soon as its check completed.
+     * it's skipped if the last round is still running.
+     */
+    private void runAsync() {
+        if (!checking.compareAndSet(false, true)) {
+            return;
+        }
+        List<Slot<T>> downSlots = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Slot<T> slot : weightTable.slots()) {
+            if (shouldCheck(slot, now)) {
+                downSlots.add(slot);
+            }
+        }
+        if (downSlots.isEmpty()) {
+            checking.set(false);
+            return;
+        }
+        new CheckRound(downSlots).drain();
+    }
+
+    private final class CheckRound {
+
+        private final List<Slot<T>> slots;
+        private final AtomicInteger remaining;
+        private final AtomicInteger inflight = new AtomicInteger();
+        /**
+         * work in progress of {@link #drain()}, only one thread starts checks at a time,
+         * and a check completed synchronously doesn't recurse into it.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        /**
+         * only accessed by the thread in {@link #drain()}.
+         */
+        private int next;
+
+        CheckRound(List<Slot<T>> slots) {
+            this.slots = slots;
+            this.remaining = new AtomicInteger(slots.size());
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (next < slots.size() && inflight.get() < checkParallelism) {
+                    inflight.incrementAndGet();
+                    check(slots.get(next++));
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void check(Slot<T> slot) {
+            CompletableFuture<Double> future;
+            try {
+                future = asyncChecker.apply(slot.object);
+            } catch (Throwable e) {
+                logger.error("", e);
+                future = null;
+            }
+            if (future == null) {
+                onChecked(slot, null, null);
+                return;
+            }
+            if (!future.isDone()) {
+                CompletableFuture<Double> toCancel = future;
+                ScheduledFuture<?> timeout = SharedCheckExecutorHolder.getInstance().schedule(() -> {
+                    if (toCancel.cancel(true)) {
+                        logger.warn("check timeout, object:{}, failover:{}", slot.object, failoverName);
+                    }
+                }, checkTimeoutNanos, NANOSECONDS);
+                future.whenComplete((rate, e) -> timeout.cancel(false));
+            }
+            future.whenComplete((rate, e) -> onChecked(slot, rate, e));
+        }
+
+        private void onChecked(Slot<T> slot, Double rate, Throwable e) {
+            try {
+                if (e != null && !(e instanceof CancellationException)) {
+                    logger.error("fail to check object:{}", slot.object, e);
+                }
+                if (rate != null && rate > 0) {
+                    if (!closed.get()) {
+                        logger.info("found recovered object:{}, rate:{}", slot.object, rate);
+                        recover(slot, rate);
+                    }
+                } else {
+                    backoff(slot);
+                }
+            } catch (Throwable t) {
+                logger.error("", t);
+            } finally {
+                inflight.decrementAndGet();
+                if (remaining.decrementAndGet() == 0) {
+                    checking.set(false);
+                } else {
+                    drain();
+                }
+            }
+        }
+    }
 }
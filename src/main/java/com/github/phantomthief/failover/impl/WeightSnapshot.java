@@ -0,0 +1,187 @@
+package com.github.phantomthief.failover.impl;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An immutable view of {@link WeightTable} for selection.
+ *
+ * All arrays and samplers are indexed by {@link Slot#index},
+ * so readers only dereference the snapshot and never touch the live weights.
+ */
+@SuppressWarnings("checkstyle:VisibilityModifier")
+final class WeightSnapshot<T> {
+
+    final int version;
+    final long buildNanoTime;
+    /**
+     * if any object is in slow start, the snapshot should be rebuilt periodically.
+     */
+    final boolean ramping;
+    final Slot<T>[] slots;
+    /**
+     * weights at the time the snapshot was built, indexed by {@link Slot#index}.
+     */
+    final int[] weights;
+    /**
+     * weights for selection, indexed by {@link Slot#index}, zero if not selectable.
+     */
+    final double[] selectWeights;
+    /**
+     * {@code null} if all down.
+     */
+    @Nullable
+    final AliasTable aliasTable;
+    @Nullable
+    final FenwickTree fenwickTree;
+    /**
+     * it's only changed by available/unavailable transitions and membership changes,
+     * so it's kept across rebuilds of the same version.
+     */
+    final List<T> available;
+    /**
+     * same as {@link #available}.
+     */
+    final Set<T> failed;
+
+    private WeightSnapshot(int version, long buildNanoTime, boolean ramping, Slot<T>[] slots, int[] weights,
+            double[] selectWeights, @Nullable AliasTable aliasTable, @Nullable FenwickTree fenwickTree,
+            List<T> available, Set<T> failed) {
+        this.version = version;
+        this.buildNanoTime = buildNanoTime;
+        this.ramping = ramping;
+        this.slots = slots;
+        this.weights = weights;
+        this.selectWeights = selectWeights;
+        this.aliasTable = aliasTable;
+        this.fenwickTree = fenwickTree;
+        this.available = available;
+        this.failed = failed;
+    }
+
+    /**
+     * weights are read after the version was taken,
+     * so a snapshot contains all transitions happened before its version.
+     *
+     * if latency aware is on, the selection weight is the current weight scaled by
+     * {@code minLatency / latency}, objects without any latency sample are taken as the fastest.
+     * objects in slow start are scaled by the ramp factor.
+     */
+    @Nonnull
+    static <T> WeightSnapshot<T> build(int version, @Nonnull Slot<T>[] slots) {
+        return build(version, slots, null, 0, null);
+    }
+
+    /**
+     * @param previous the available and failed objects of it are reused if it's of the same version.
+     */
+    @Nonnull
+    static <T> WeightSnapshot<T> build(int version, @Nonnull Slot<T>[] slots,
+            @Nullable SlowStartRamp slowStartRamp, long slowStartNanos, @Nullable WeightSnapshot<T> previous) {
+        long now = System.nanoTime();
+        boolean ramping = false;
+        int size = slots.length;
+        while (size > 0 && slots[size - 1] == null) {
+            size--;
+        }
+        int[] weights = new int[size];
+        double[] selectWeights = new double[size];
+        double[] latencies = null;
+        double minLatency = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Slot<T> slot = slots[i];
+            if (slot == null) { // removed
+                continue;
+            }
+            int weight = slot.currentWeight;
+            weights[i] = weight;
+            if (weight > 0) {
+                selectWeights[i] = weight;
+                long rampStart = slot.rampStartNanos;
+                if (slowStartRamp != null && rampStart != 0 && now - rampStart < slowStartNanos) {
+                    selectWeights[i] *= slowStartRamp.factor((double) (now - rampStart) / slowStartNanos);
+                    ramping = true;
+                }
+                if (slot.latency != null) {
+                    if (latencies == null) {
+                        latencies = new double[size];
+                    }
+                    // read it only once, it may be changed by others.
+                    double latency = slot.latency.get();
+                    latencies[i] = latency;
+                    if (latency > 0) {
+                        minLatency = Math.min(minLatency, latency);
+                    }
+                }
+            }
+        }
+        if (latencies != null && minLatency != Double.MAX_VALUE) {
+            for (int i = 0; i < size; i++) {
+                if (latencies[i] > minLatency) {
+                    selectWeights[i] *= minLatency / latencies[i];
+                }
+            }
+        }
+        return build(version, now, ramping, slots, weights, selectWeights, null, previous);
+    }
+
+    /**
+     * @param previous the filtered snapshot of a previous base snapshot with the same predicate,
+     * the available and failed objects of it are reused if it's of the same version.
+     * @return a snapshot with same weights, but only objects matching the predicate are selectable.
+     */
+    @Nonnull
+    WeightSnapshot<T> filter(@Nonnull Predicate<? super T> predicate, @Nullable WeightSnapshot<T> previous) {
+        return build(version, buildNanoTime, ramping, slots, weights, selectWeights, predicate, previous);
+    }
+
+    private static <T> WeightSnapshot<T> build(int version, long buildNanoTime, boolean ramping,
+            Slot<T>[] slots, int[] weights, double[] baseSelectWeights,
+            @Nullable Predicate<? super T> predicate, @Nullable WeightSnapshot<T> previous) {
+        boolean reuse = previous != null && previous.version == version;
+        double[] selectWeights = new double[weights.length];
+        ImmutableList.Builder<T> available = reuse ? null : ImmutableList.builder();
+        ImmutableSet.Builder<T> failed = reuse ? null : ImmutableSet.builder();
+        boolean anyAvailable = false;
+        for (int i = 0; i < weights.length; i++) {
+            if (slots[i] == null) {
+                continue;
+            }
+            T object = slots[i].object;
+            if (predicate != null && !predicate.test(object)) {
+                continue;
+            }
+            int weight = weights[i];
+            if (weight > 0) {
+                selectWeights[i] = baseSelectWeights[i];
+                anyAvailable = true;
+                if (!reuse) {
+                    available.add(object);
+                }
+            } else if (weight == 0 && !reuse) {
+                failed.add(object);
+            }
+        }
+        AliasTable aliasTable = null;
+        FenwickTree fenwickTree = null;
+        if (anyAvailable) {
+            aliasTable = new AliasTable(selectWeights);
+            fenwickTree = new FenwickTree(selectWeights);
+        }
+        return new WeightSnapshot<>(version, buildNanoTime, ramping, slots, weights, selectWeights,
+                aliasTable, fenwickTree, reuse ? previous.available : available.build(),
+                reuse ? previous.failed : failed.build());
+    }
+
+    Slot<T> pick() {
+        return slots[aliasTable.next()];
+    }
+}
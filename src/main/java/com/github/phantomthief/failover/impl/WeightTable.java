@@ -0,0 +1,559 @@
+package com.github.phantomthief.failover.impl;
+
+import static java.util.Arrays.copyOf;
+import static java.util.concurrent.atomic.AtomicIntegerFieldUpdater.newUpdater;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import com.github.phantomthief.failover.impl.EventDispatcher.PendingChange;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Weight storage of {@link WeightFailover}.
+ *
+ * Each resource gets a {@link Slot} with a stable index when it's added,
+ * and the weights are kept as primitive int in the slot, so there is no boxing on fail/success/down.
+ * The current weight is updated by CAS, there is no lock on the update path.
+ * Readers get an immutable {@link WeightSnapshot}, which is rebuilt lazily by one reader at a time:
+ * <ul>
+ *     <li>an available/unavailable transition bumps the version, and the next read rebuilds it;</li>
+ *     <li>other weight or latency changes only mark it dirty, and it's rebuilt at most once per refresh interval;</li>
+ *     <li>while any object is in slow start, it's rebuilt periodically to follow the ramp;</li>
+ *     <li>readers arriving during a rebuild use the stale snapshot instead of waiting or rebuilding again.</li>
+ * </ul>
+ * {@link #slots()} is indexed by {@link Slot#index}, so a snapshot can be built by a plain array scan.
+ *
+ * Objects with zero weight are also kept in a set updated on available/unavailable transitions,
+ * so {@link #failed()} doesn't need a snapshot rebuild nor a scan of all objects.
+ */
+final class WeightTable<T> {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int RAMP_STEPS = 20;
+
+    private final ConcurrentMap<T, Slot<T>> slotMap;
+
+    /**
+     * high water mark of indexes.
+     */
+    @GuardedBy("this")
+    private int size;
+    /**
+     * indexes of removed slots, which are reused by new slots.
+     */
+    @GuardedBy("this")
+    private final BitSet freeIndexes = new BitSet();
+
+    private volatile Slot<T>[] slots;
+    /**
+     * all objects, {@code null} after membership changed, and it's rebuilt on the next read.
+     */
+    private volatile List<T> all;
+
+    private final long refreshIntervalNanos;
+    private final boolean recordStats;
+    private final long latencyDecayNanos;
+    private final double passivePermitsPerSecond;
+    @Nullable
+    private final SlowStartRamp slowStartRamp;
+    private final long slowStartNanos;
+    /**
+     * a ramping snapshot is rebuilt at most so often.
+     */
+    private final long rampRefreshIntervalNanos;
+
+    /**
+     * only bumped on available/unavailable transitions and membership changes.
+     */
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile boolean weightDirty;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile WeightSnapshot<T> snapshot;
+
+    private final Set<T> failedSet = ConcurrentHashMap.newKeySet();
+    /**
+     * bumped after any change of {@link #failedSet}.
+     */
+    private final AtomicInteger failedVersion = new AtomicInteger();
+    private volatile FailedSnapshot<T> failedSnapshot = new FailedSnapshot<>(0, ImmutableSet.of());
+
+    private static final class FailedSnapshot<T> {
+
+        private final int version;
+        private final ImmutableSet<T> failed;
+
+        FailedSnapshot(int version, ImmutableSet<T> failed) {
+            this.version = version;
+            this.failed = failed;
+        }
+    }
+
+    @SuppressWarnings("checkstyle:VisibilityModifier")
+    static final class Slot<T> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Slot> CURRENT_WEIGHT =
+                newUpdater(Slot.class, "currentWeight");
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Slot, PendingChange> PENDING_CHANGE =
+                AtomicReferenceFieldUpdater.newUpdater(Slot.class, PendingChange.class, "pendingChange");
+
+        final T object;
+        final int index;
+        /**
+         * only changed by {@link WeightTable#update}.
+         */
+        volatile int initWeight;
+        volatile int currentWeight;
+        /**
+         * {@link System#nanoTime()} when it starts slow start, 0 if it never does.
+         */
+        volatile long rampStartNanos;
+        /**
+         * consecutive failed checks since it was down, only used if check backoff is on.
+         */
+        volatile int failedChecks;
+        /**
+         * {@link System#nanoTime()} before which it's not checked, only used if check backoff is on.
+         */
+        volatile long nextCheckNanos;
+        /**
+         * {@code null} if stats recording is off.
+         */
+        @Nullable
+        final StatsCounter stats;
+        /**
+         * {@code null} if latency aware is off.
+         */
+        @Nullable
+        final LatencyEwma latency;
+        /**
+         * limits selections while it's down, {@code null} if passive recovery is off.
+         */
+        @Nullable
+        final RateLimiter passiveLimiter;
+        /**
+         * the last queued WEIGHT_CHANGED event, only used if listeners are asynchronous.
+         */
+        @Nullable
+        volatile PendingChange<T> pendingChange;
+
+        private Slot(T object, int index, int initWeight, @Nullable StatsCounter stats,
+                @Nullable LatencyEwma latency, @Nullable RateLimiter passiveLimiter) {
+            this.object = object;
+            this.index = index;
+            this.initWeight = initWeight;
+            this.currentWeight = initWeight;
+            this.stats = stats;
+            this.latency = latency;
+            this.passiveLimiter = passiveLimiter;
+        }
+
+        /**
+         * the current weight is scaled by CAS to keep the health ratio, so a concurrent change is not lost,
+         * and an available object stays available.
+         */
+        private void updateInitWeight(int newInitWeight) {
+            int oldInitWeight = initWeight;
+            initWeight = newInitWeight;
+            int current;
+            int scaled;
+            do {
+                current = currentWeight;
+                scaled = current > 0
+                        ? (int) Math.max(1, Math.min(newInitWeight, (long) current * newInitWeight / oldInitWeight))
+                        : 0;
+            } while (!compareAndSetWeight(current, scaled));
+        }
+
+        boolean compareAndSetWeight(int expect, int update) {
+            return CURRENT_WEIGHT.compareAndSet(this, expect, update);
+        }
+
+        boolean compareAndSetPendingChange(@Nullable PendingChange<T> expect, PendingChange<T> update) {
+            return PENDING_CHANGE.compareAndSet(this, expect, update);
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(object);
+        }
+    }
+
+    WeightTable(@Nonnull Map<T, Integer> initWeightMap) {
+        this(initWeightMap, new WeightFailoverBuilder<>());
+    }
+
+    /**
+     * only options about weights and selection in the builder are used.
+     */
+    WeightTable(@Nonnull Map<T, Integer> initWeightMap, @Nonnull WeightFailoverBuilder<?> builder) {
+        this.refreshIntervalNanos = Math.max(0, builder.weightRefreshIntervalNanos);
+        this.recordStats = builder.recordStats;
+        this.latencyDecayNanos = builder.latencyDecayNanos;
+        this.passivePermitsPerSecond = builder.passiveRecoveryPermits;
+        this.slowStartRamp = builder.slowStartRamp;
+        this.slowStartNanos = builder.slowStartNanos;
+        this.rampRefreshIntervalNanos = Math.max(refreshIntervalNanos, slowStartNanos / RAMP_STEPS);
+        this.slotMap = new ConcurrentHashMap<>(initWeightMap.size());
+        this.slots = newSlots(Math.max(MIN_CAPACITY, initWeightMap.size()));
+        initWeightMap.forEach((object, initWeight) -> add(object, initWeight, false));
+        this.snapshot = buildSnapshot(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Slot<T>[] newSlots(int length) {
+        return (Slot<T>[]) new Slot<?>[length];
+    }
+
+    @Nullable
+    Slot<T> get(T object) {
+        return slotMap.get(object);
+    }
+
+    /**
+     * @return the existed slot, or a new added one with {@code initWeight}, which starts slow start if it's on.
+     */
+    @Nonnull
+    Slot<T> getOrAdd(T object, int initWeight) {
+        Slot<T> slot = slotMap.get(object);
+        if (slot != null) {
+            return slot;
+        }
+        return add(object, initWeight, true);
+    }
+
+    private synchronized Slot<T> add(T object, int initWeight, boolean slowStart) {
+        Slot<T> slot = slotMap.get(object);
+        if (slot != null) {
+            return slot;
+        }
+        Slot<T>[] current = slots;
+        if (!freeIndexes.isEmpty()) {
+            // copy on write, the index may be in a published snapshot.
+            current = current.clone();
+        } else if (size == current.length) {
+            current = copyOf(current, current.length * 2);
+        }
+        slot = newSlot(current, object, initWeight, slowStart);
+        current = slots(current, slot);
+        // publish the array before the map, so an index from the map is always in the array.
+        slots = current;
+        slotMap.put(object, slot);
+        all = null;
+        syncFailed(slot);
+        version.incrementAndGet();
+        return slot;
+    }
+
+    @GuardedBy("this")
+    private Slot<T> newSlot(Slot<T>[] current, T object, int initWeight, boolean slowStart) {
+        int index = freeIndexes.nextSetBit(0);
+        if (index >= 0) {
+            freeIndexes.clear(index);
+        } else {
+            index = size++;
+        }
+        Slot<T> slot = new Slot<>(object, index, initWeight, recordStats ? new StatsCounter() : null,
+                latencyDecayNanos > 0 ? new LatencyEwma(latencyDecayNanos) : null,
+                passivePermitsPerSecond > 0 ? RateLimiter.create(passivePermitsPerSecond) : null);
+        if (slowStart) {
+            startRamp(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * @return the array with the slot put in, it's grown if the index is out of it.
+     */
+    private static <T> Slot<T>[] slots(Slot<T>[] current, Slot<T> slot) {
+        if (slot.index >= current.length) {
+            current = copyOf(current, Math.max(current.length * 2, slot.index + 1));
+        }
+        current[slot.index] = slot;
+        return current;
+    }
+
+    /**
+     * replaces all objects by {@code newWeightMap} in a single version:
+     * <ul>
+     *     <li>objects not in the map are removed, and their indexes are reused later;</li>
+     *     <li>kept objects keep their slots, and so their health and pending checks,
+     *     the current weight is scaled if the init weight changed;</li>
+     *     <li>new objects are added, and start slow start if it's on.</li>
+     * </ul>
+     * the array is copied on write, so a published snapshot is never affected.
+     */
+    synchronized void update(@Nonnull Map<T, Integer> newWeightMap) {
+        Slot<T>[] current = slots.clone();
+        List<Slot<T>> added = new ArrayList<>();
+        List<T> removed = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Slot<T> slot = current[i];
+            if (slot == null) {
+                continue;
+            }
+            Integer initWeight = newWeightMap.get(slot.object);
+            if (initWeight == null) {
+                current[i] = null;
+                freeIndexes.set(i);
+                removed.add(slot.object);
+            } else if (initWeight != slot.initWeight) {
+                slot.updateInitWeight(initWeight);
+            }
+        }
+        for (Entry<T, Integer> entry : newWeightMap.entrySet()) {
+            if (!slotMap.containsKey(entry.getKey())) {
+                Slot<T> slot = newSlot(current, entry.getKey(), entry.getValue(), true);
+                current = slots(current, slot);
+                added.add(slot);
+            }
+        }
+        // publish the array before the map, so an index from the map is always in the array.
+        slots = current;
+        for (Slot<T> slot : added) {
+            slotMap.put(slot.object, slot);
+        }
+        for (T object : removed) {
+            slotMap.remove(object);
+            if (failedSet.remove(object)) {
+                failedVersion.incrementAndGet();
+            }
+        }
+        all = null;
+        for (Slot<T> slot : added) {
+            syncFailed(slot);
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return all slots indexed by {@link Slot#index}, there may be {@code null} elements of removed or
+     * not used indexes.
+     */
+    Slot<T>[] slots() {
+        return slots;
+    }
+
+    int size() {
+        return slotMap.size();
+    }
+
+    /**
+     * @return an immutable list of all objects, it's only rebuilt after membership changed.
+     */
+    @Nonnull
+    List<T> all() {
+        List<T> current = all;
+        if (current == null) {
+            current = buildAll();
+        }
+        return current;
+    }
+
+    private synchronized List<T> buildAll() {
+        List<T> current = all;
+        if (current == null) {
+            ImmutableList.Builder<T> builder = ImmutableList.builder();
+            for (Slot<T> slot : slots) {
+                if (slot != null) {
+                    builder.add(slot.object);
+                }
+            }
+            current = builder.build();
+            all = current;
+        }
+        return current;
+    }
+
+    @Nonnull
+    WeightSnapshot<T> snapshot() {
+        WeightSnapshot<T> current = snapshot;
+        if (current.version != version.get()) {
+            return rebuild(current);
+        }
+        if (weightDirty || current.ramping) {
+            long elapsed = System.nanoTime() - current.buildNanoTime;
+            if (weightDirty && elapsed >= refreshIntervalNanos
+                    || current.ramping && elapsed >= rampRefreshIntervalNanos) {
+                return rebuild(current);
+            }
+        }
+        return current;
+    }
+
+    private WeightSnapshot<T> rebuild(WeightSnapshot<T> current) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            // someone else is rebuilding it, use the stale one.
+            return current;
+        }
+        try {
+            // clear the flag before reading weights, so a change during building marks it again.
+            weightDirty = false;
+            WeightSnapshot<T> newSnapshot = buildSnapshot(current);
+            snapshot = newSnapshot;
+            return newSnapshot;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private WeightSnapshot<T> buildSnapshot(@Nullable WeightSnapshot<T> previous) {
+        return WeightSnapshot.build(version.get(), slots, slowStartRamp, slowStartNanos, previous);
+    }
+
+    private void startRamp(Slot<T> slot) {
+        if (slowStartRamp != null) {
+            long now = System.nanoTime();
+            slot.rampStartNanos = now == 0 ? 1 : now;
+        }
+    }
+
+    /**
+     * should be called after any change of {@link Slot#currentWeight},
+     * an unavailable slot becoming available starts slow start if it's on.
+     */
+    void onWeightChanged(@Nonnull Slot<T> slot, int oldWeight, int newWeight) {
+        if (applyWeightChange(slot, oldWeight, newWeight)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * same as {@link #onWeightChanged(Slot, int, int)} but it doesn't bump the version, for a batch of changes.
+     *
+     * @return {@code true} if the slot became available or unavailable,
+     * then {@link #bumpVersion()} should be called after the batch.
+     */
+    boolean applyWeightChange(@Nonnull Slot<T> slot, int oldWeight, int newWeight) {
+        if (oldWeight == newWeight) {
+            return false;
+        }
+        if (oldWeight <= 0 && newWeight > 0) {
+            // before the version bumped, so the next snapshot sees it.
+            startRamp(slot);
+        }
+        if (oldWeight <= 0 != newWeight <= 0) {
+            syncFailed(slot);
+            return true;
+        }
+        markDirty();
+        return false;
+    }
+
+    /**
+     * updates membership of {@link #failedSet} by the current weight.
+     * transitions of the same slot may be applied out of order by different threads,
+     * so it's checked again after writing, and the last writer always leaves it consistent.
+     */
+    private void syncFailed(Slot<T> slot) {
+        boolean failed;
+        do {
+            failed = slot.currentWeight <= 0;
+            boolean changed = failed ? failedSet.add(slot.object) : failedSet.remove(slot.object);
+            if (changed) {
+                failedVersion.incrementAndGet();
+            }
+        } while (failed != slot.currentWeight <= 0);
+        Slot<T> current = slotMap.get(slot.object);
+        if (current != slot) {
+            // removed by update() concurrently.
+            if (current != null) {
+                syncFailed(current);
+            } else if (failedSet.remove(slot.object)) {
+                failedVersion.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return an immutable set of objects with zero weight, it's only copied after the set changed.
+     */
+    @Nonnull
+    Set<T> failed() {
+        return failedSnapshot().failed;
+    }
+
+    private FailedSnapshot<T> failedSnapshot() {
+        FailedSnapshot<T> current = failedSnapshot;
+        int currentVersion = failedVersion.get();
+        if (current.version == currentVersion) {
+            return current;
+        }
+        current = new FailedSnapshot<>(currentVersion, ImmutableSet.copyOf(failedSet));
+        failedSnapshot = current;
+        return current;
+    }
+
+    /**
+     * @return a random object with zero weight, {@code null} if there is none.
+     */
+    @Nullable
+    T randomFailed() {
+        if (failedSet.isEmpty()) {
+            return null;
+        }
+        ImmutableList<T> failed = failedSnapshot().failed.asList();
+        return failed.isEmpty() ? null : failed.get(ThreadLocalRandom.current().nextInt(failed.size()));
+    }
+
+    int failedCount() {
+        return failedSet.size();
+    }
+
+    void bumpVersion() {
+        version.incrementAndGet();
+    }
+
+    void onWeightChanged(int oldWeight, int newWeight) {
+        if (oldWeight == newWeight) {
+            return;
+        }
+        if (oldWeight <= 0 != newWeight <= 0) {
+            version.incrementAndGet();
+        } else {
+            markDirty();
+        }
+    }
+
+    /**
+     * the selection weights changed but no object became available or unavailable,
+     * it's applied on the next refresh.
+     */
+    void markDirty() {
+        if (!weightDirty) { // avoid writing the shared flag during an error storm
+            weightDirty = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (Slot<T> slot : slots) {
+            if (slot != null) {
+                joiner.add(slot.object + "=" + slot.initWeight);
+            }
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.phantomthief.failover.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Efraimidis–Spirakis weighted sampling without replacement with exponential jumps (A-ExpJ),
+ * see https://en.wikipedia.org/wiki/Reservoir_sampling#Algorithm_A-ExpJ
+ *
+ * It picks n indexes in a single pass, keeping the n largest keys in a primitive min heap.
+ * Random numbers are only drawn when an index enters the reservoir, so it's O(N + n log n log(N/n)),
+ * compare to restarting a walk for each pick.
+ * Keys are kept in log space to avoid underflow of {@code u^(1/w)} on small weights.
+ */
+final class WeightedReservoir {
+
+    private WeightedReservoir() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param weights non negative, zero weight indexes are never picked.
+     * @param accept indexes not accepted are skipped as if their weights are zero.
+     * @return picked indexes in the same order as picking one by one without replacement.
+     */
+    @Nonnull
+    static int[] sample(@Nonnull double[] weights, int n, @Nonnull IntPredicate accept) {
+        int capacity = Math.min(n, weights.length);
+        if (capacity <= 0) {
+            return new int[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double[] keys = new double[capacity];
+        int[] indexes = new int[capacity];
+        int size = 0;
+        int i = 0;
+        // fill the reservoir.
+        for (; i < weights.length && size < capacity; i++) {
+            double weight = weights[i];
+            if (weight > 0 && accept.test(i)) {
+                keys[size] = Math.log(nextOpenDouble(random)) / weight;
+                indexes[size] = i;
+                siftUp(keys, indexes, size++);
+            }
+        }
+        if (size == capacity && keys[0] < 0) {
+            // jump over the indexes which can't enter the reservoir.
+            double jump = Math.log(nextOpenDouble(random)) / keys[0];
+            for (; i < weights.length; i++) {
+                double weight = weights[i];
+                if (weight <= 0 || !accept.test(i)) {
+                    continue;
+                }
+                jump -= weight;
+                if (jump > 0) {
+                    continue;
+                }
+                // the new key is uniformly distributed in (minKey, 0) of the log space.
+                double threshold = Math.exp(keys[0] * weight);
+                double u = threshold + (1 - threshold) * nextOpenDouble(random);
+                keys[0] = Math.min(Math.log(u) / weight, 0);
+                indexes[0] = i;
+                siftDown(keys, indexes, 0, size);
+                if (keys[0] == 0) {
+                    // no key is larger than zero, it's rare but possible by float precision.
+                    break;
+                }
+                jump = Math.log(nextOpenDouble(random)) / keys[0];
+            }
+        }
+        // heap sort into descending keys.
+        for (int last = size - 1; last > 0; last--) {
+            swap(keys, indexes, 0, last);
+            siftDown(keys, indexes, 0, last);
+        }
+        if (size == capacity) {
+            return indexes;
+        }
+        int[] result = new int[size];
+        System.arraycopy(indexes, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * @return a double in (0, 1].
+     */
+    private static double nextOpenDouble(ThreadLocalRandom random) {
+        return 1 - random.nextDouble();
+    }
+
+    private static void siftUp(double[] keys, int[] indexes, int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (keys[parent] <= keys[pos]) {
+                return;
+            }
+            swap(keys, indexes, parent, pos);
+            pos = parent;
+        }
+    }
+
+    private static void siftDown(double[] keys, int[] indexes, int pos, int size) {
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (keys[pos] <= keys[child]) {
+                return;
+            }
+            swap(keys, indexes, pos, child);
+            pos = child;
+        }
+    }
+
+    private static void swap(double[] keys, int[] indexes, int a, int b) {
+        double key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        int index = indexes[a];
+        indexes[a] = indexes[b];
+        indexes[b] = index;
+    }
+}
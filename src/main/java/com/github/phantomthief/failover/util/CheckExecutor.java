@@ -0,0 +1,226 @@
+package com.github.phantomthief.failover.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Thread.MIN_PRIORITY;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Where blocking recovery checks run, so a hung checker of one failover can't starve checks of others.
+ *
+ * <ul>
+ *     <li>{@link #shared()}: a shared cached pool, the default of parallel checks;</li>
+ *     <li>{@link #isolated(String, int)}: a bounded pool for a group of failovers, e.g. all pools of a database;</li>
+ *     <li>{@link #threadPerCheck()}: a new thread for each check, it's a virtual thread if the runtime supports;</li>
+ *     <li>{@link #of(String, ExecutorService)}: a user managed executor.</li>
+ * </ul>
+ *
+ * {@link #queued()} and {@link #running()} show whether checks are starving,
+ * and {@link #executors()} lists all of them except user managed ones.
+ */
+public final class CheckExecutor {
+
+    private static final Logger logger = getLogger(CheckExecutor.class);
+
+    private static final ConcurrentMap<String, CheckExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ExecutorService executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+
+    private CheckExecutor(String name, ExecutorService executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    /**
+     * the default one, a cached pool shared by all failovers.
+     */
+    @Nonnull
+    public static CheckExecutor shared() {
+        return EXECUTORS.computeIfAbsent("shared",
+                name -> new CheckExecutor(name, SharedCheckWorkerExecutorHolder.getInstance()));
+    }
+
+    /**
+     * a pool of {@code threads} shared by all failovers of the {@code group},
+     * checks beyond it wait in an unbounded queue, see {@link #queued()}.
+     * the pool is created by the first call of a group, {@code threads} of later calls are ignored.
+     */
+    @Nonnull
+    public static CheckExecutor isolated(@Nonnull String group, int threads) {
+        checkNotNull(group);
+        checkArgument(threads > 0);
+        CheckExecutor result = EXECUTORS.computeIfAbsent("isolated-" + group, name -> {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, SECONDS,
+                    new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                            .setNameFormat("failover-check-" + group + "-%d")
+                            .setPriority(MIN_PRIORITY)
+                            .setDaemon(true) //
+                            .build()) {
+
+                public void shutdown() {
+                    throw new UnsupportedOperationException();
+                }
+
+                public List<Runnable> shutdownNow() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            executor.allowCoreThreadTimeOut(true);
+            return new CheckExecutor(name, executor);
+        });
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) result.executor;
+        if (pool.getMaximumPoolSize() != threads) {
+            logger.warn("check executor of group:{} is already created with {} threads, ignore:{}", group,
+                    pool.getMaximumPoolSize(), threads);
+        }
+        return result;
+    }
+
+    /**
+     * runs each check in a new thread, it's a virtual thread on a runtime supports it (Java 21+),
+     * or a platform daemon thread.
+     */
+    @Nonnull
+    public static CheckExecutor threadPerCheck() {
+        return EXECUTORS.computeIfAbsent("thread-per-check",
+                name -> new CheckExecutor(name, newThreadPerTaskExecutor()));
+    }
+
+    /**
+     * @param executor it's not shut down by failovers, and it's not in {@link #executors()}.
+     */
+    @Nonnull
+    public static CheckExecutor of(@Nonnull String name, @Nonnull ExecutorService executor) {
+        checkNotNull(name);
+        checkNotNull(executor);
+        return new CheckExecutor(name, executor);
+    }
+
+    /**
+     * @return all created check executors except user managed ones, by name.
+     */
+    @Nonnull
+    public static Map<String, CheckExecutor> executors() {
+        return ImmutableMap.copyOf(EXECUTORS);
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() since Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.info("virtual thread is not supported, use platform threads for checks.");
+            // threads are not kept after checks.
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, SECONDS, new SynchronousQueue<>(),
+                    new ThreadFactoryBuilder().setNameFormat("failover-check-%d")
+                            .setPriority(MIN_PRIORITY)
+                            .setDaemon(true) //
+                            .build());
+        }
+    }
+
+    /**
+     * @return a future to cancel the check, it interrupts the running check.
+     */
+    @Nonnull
+    public Future<?> submit(@Nonnull Runnable task) {
+        checkNotNull(task);
+        CheckTask future = new CheckTask(task);
+        queued.incrementAndGet();
+        try {
+            executor.execute(future);
+        } catch (RuntimeException e) {
+            future.cancel(false);
+            throw e;
+        }
+        return future;
+    }
+
+    private final class CheckTask extends FutureTask<Void> {
+
+        private final AtomicBoolean dequeued = new AtomicBoolean();
+
+        CheckTask(Runnable task) {
+            super(task, null);
+        }
+
+        @Override
+        public void run() {
+            if (!dequeued.compareAndSet(false, true)) {
+                return; // cancelled before it started
+            }
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            try {
+                super.run();
+            } finally {
+                running.decrementAndGet();
+                completed.increment();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && dequeued.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+            }
+            return cancelled;
+        }
+    }
+
+    @Nonnull
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return checks submitted but not started yet, a growing one means checks are starving.
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * @return checks running now.
+     */
+    public int running() {
+        return running.get();
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CheckExecutor[" + name + ", queued:" + queued() + ", running:" + running() + "]";
+    }
+}
@@ -167,16 +167,14 @@ public class ConcurrencyAware<T> {
     }
 
     public int endAndGet(@Nonnull T obj) {
+        if (!concurrency.containsKey(obj)) {
+            // nothing to update, so skip the locking write of compute.
+            onIllegalState(obj);
+            return 0;
+        }
         Integer concurrentNum = concurrency.compute(obj, (thisKey, oldValue) -> {
             if (oldValue == null) {
-                logger.warn("illegal state found, obj:{}", thisKey);
-                for (ThrowableConsumer<T, Throwable> handler : illegalStateHandlers) {
-                    try {
-                        handler.accept(thisKey);
-                    } catch (Throwable e) {
-                        logger.error("", e);
-                    }
-                }
+                onIllegalState(thisKey);
                 return null;
             }
             int result = oldValue - 1;
@@ -189,6 +187,17 @@ public class ConcurrencyAware<T> {
         return concurrentNum == null ? 0 : concurrentNum;
     }
 
+    private void onIllegalState(T obj) {
+        logger.warn("illegal state found, obj:{}", obj);
+        for (ThrowableConsumer<T, Throwable> handler : illegalStateHandlers) {
+            try {
+                handler.accept(obj);
+            } catch (Throwable e) {
+                logger.error("", e);
+            }
+        }
+    }
+
     public ConcurrencyAware<T>
             addIllegalStateHandler(@Nonnull ThrowableConsumer<T, Throwable> handler) {
         illegalStateHandlers.add(checkNotNull(handler));
@@ -0,0 +1,270 @@
+package com.github.phantomthief.failover.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Thread.MIN_PRIORITY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A hashed timing wheel for recovery checks of lots of failovers, see
+ * <a href="http://www.cs.columbia.edu/~nahum/w6998/papers/sosp87-timing-wheels.pdf">Hashed and Hierarchical
+ * Timing Wheels</a>.
+ *
+ * Compare to {@link SharedCheckExecutorHolder}:
+ * <ul>
+ *     <li>scheduling and cancelling are O(1), there is no heap of delayed tasks;</li>
+ *     <li>one thread ticks the wheel, all checks due in a tick are handed to the worker pool as a batch,
+ *     the workers only start check rounds, and blocking checkers run on their {@link CheckExecutor};</li>
+ *     <li>the ticking thread parks when nothing is scheduled, so failovers with nothing down cost nothing;</li>
+ *     <li>{@link #setProbeRateLimit} limits checks of all failovers on it.</li>
+ * </ul>
+ * A timeout may run up to one tick ({@value #TICK_MILLIS}ms) late.
+ */
+public final class HashedWheelCheckScheduler {
+
+    private static final Logger logger = getLogger(HashedWheelCheckScheduler.class);
+
+    private static final long TICK_MILLIS = 10;
+    private static final long TICK_NANOS = MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final int WHEEL_SIZE = 512; // power of 2
+    private static final int WORKER_THREAD_COUNT = 10;
+
+    private final List<Queue<Timeout>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    /**
+     * timeouts neither expired nor cancelled.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object idleLock = new Object();
+    private final long startNanos = System.nanoTime();
+    private final ExecutorService workers;
+
+    @Nullable
+    private volatile RateLimiter probeRateLimiter;
+
+    /**
+     * only accessed by the ticking thread.
+     */
+    private long tick;
+
+    private HashedWheelCheckScheduler() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new LinkedList<>());
+        }
+        this.workers = new ThreadPoolExecutor(WORKER_THREAD_COUNT, WORKER_THREAD_COUNT, 60, SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                        .setNameFormat("failover-check-wheel-worker-%d")
+                        .setPriority(MIN_PRIORITY)
+                        .setDaemon(true) //
+                        .build());
+        ((ThreadPoolExecutor) workers).allowCoreThreadTimeOut(true);
+        Thread ticker = new Thread(this::work, "failover-check-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public static HashedWheelCheckScheduler getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private static class LazyHolder {
+
+        private static final HashedWheelCheckScheduler INSTANCE = new HashedWheelCheckScheduler();
+    }
+
+    /**
+     * runs {@code task} once on the worker pool after {@code delay}.
+     */
+    @Nonnull
+    public Timeout newTimeout(@Nonnull Runnable task, long delay, @Nonnull TimeUnit unit) {
+        checkNotNull(task);
+        checkNotNull(unit);
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        newTimeouts.add(timeout);
+        if (pending.getAndIncrement() == 0) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * limits checks of all failovers on this scheduler to {@code permitsPerSecond},
+     * checks beyond it are skipped and retried in the next round of their failovers.
+     * a non positive value means no limit, which is the default.
+     */
+    public void setProbeRateLimit(double permitsPerSecond) {
+        probeRateLimiter = permitsPerSecond > 0 ? RateLimiter.create(permitsPerSecond) : null;
+    }
+
+    /**
+     * @return {@code false} if a check should be skipped by {@link #setProbeRateLimit}.
+     */
+    public boolean tryAcquireProbe() {
+        RateLimiter limiter = probeRateLimiter;
+        return limiter == null || limiter.tryAcquire();
+    }
+
+    /**
+     * @return timeouts neither expired nor cancelled.
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    private void work() {
+        while (true) {
+            try {
+                waitForTimeouts();
+                waitForNextTick();
+                transferNewTimeouts();
+                expire(wheel.get((int) (tick & (WHEEL_SIZE - 1))));
+                tick++;
+            } catch (Throwable e) {
+                logger.error("", e);
+            }
+        }
+    }
+
+    private void waitForTimeouts() throws InterruptedException {
+        if (pending.get() > 0) {
+            return;
+        }
+        synchronized (idleLock) {
+            while (pending.get() == 0) {
+                idleLock.wait();
+            }
+        }
+        // skip ticks passed while idle, all timeouts in the wheel are cancelled.
+        tick = Math.max(tick, currentTick());
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / TICK_NANOS;
+    }
+
+    private void waitForNextTick() {
+        long deadline = startNanos + (tick + 1) * TICK_NANOS;
+        long sleepNanos;
+        while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.state != Timeout.INIT) {
+                continue;
+            }
+            long deadlineTick = Math.max(tick, (timeout.deadlineNanos - startNanos + TICK_NANOS - 1) / TICK_NANOS);
+            timeout.remainingRounds = (deadlineTick - tick) / WHEEL_SIZE;
+            wheel.get((int) (deadlineTick & (WHEEL_SIZE - 1))).add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        List<Runnable> due = null;
+        for (Iterator<Timeout> iterator = bucket.iterator(); iterator.hasNext();) {
+            Timeout timeout = iterator.next();
+            if (timeout.state != Timeout.INIT) {
+                iterator.remove();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                iterator.remove();
+                if (timeout.expire()) {
+                    if (due == null) {
+                        due = new ArrayList<>();
+                    }
+                    due.add(timeout.task);
+                }
+            }
+        }
+        if (due != null) {
+            for (Runnable task : due) {
+                workers.execute(task);
+            }
+        }
+    }
+
+    public static final class Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelCheckScheduler scheduler;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private volatile int state;
+        /**
+         * only accessed by the ticking thread.
+         */
+        private long remainingRounds;
+
+        private Timeout(HashedWheelCheckScheduler scheduler, Runnable task, long deadlineNanos) {
+            this.scheduler = scheduler;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * @return {@code false} if it's expired or cancelled already.
+         */
+        public boolean cancel() {
+            if (STATE.compareAndSet(this, INIT, CANCELLED)) {
+                scheduler.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean expire() {
+            if (STATE.compareAndSet(this, INIT, EXPIRED)) {
+                scheduler.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
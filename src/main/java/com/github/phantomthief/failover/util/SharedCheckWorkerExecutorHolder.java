@@ -0,0 +1,43 @@
+package com.github.phantomthief.failover.util;
+
+import static java.lang.Thread.MIN_PRIORITY;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * runs blocking checkers when a failover checks objects in parallel or with a timeout.
+ *
+ * the number of running checks is bounded by the parallelism of each failover, not by this executor,
+ * so a slow checker of one failover never delays checks of others.
+ */
+public class SharedCheckWorkerExecutorHolder {
+
+    public static ExecutorService getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private static class LazyHolder {
+
+        private static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                60, SECONDS, new SynchronousQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("failover-check-worker-%d")
+                        .setPriority(MIN_PRIORITY)
+                        .setDaemon(true) //
+                        .build()) {
+
+            public void shutdown() {
+                throw new UnsupportedOperationException();
+            }
+
+            public List<Runnable> shutdownNow() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.phantomthief.failover.util;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * default executor of asynchronous failover listeners.
+ *
+ * each failover submits at most one task at a time, so the queue is bounded by the number of failovers.
+ */
+public class SharedListenerExecutorHolder {
+
+    private static final int THREAD_COUNT = 2;
+
+    public static ExecutorService getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private static class LazyHolder {
+
+        private static final ExecutorService INSTANCE = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                60, SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("failover-listener-%d")
+                        .setDaemon(true) //
+                        .build()) {
+
+            public void shutdown() {
+                throw new UnsupportedOperationException();
+            }
+
+            public List<Runnable> shutdownNow() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
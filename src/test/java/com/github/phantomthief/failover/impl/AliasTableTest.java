@@ -0,0 +1,41 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.github.phantomthief.failover.WeighTestUtils.checkRatio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+class AliasTableTest {
+
+    @Test
+    void test() {
+        AliasTable table = new AliasTable(new double[] {1, 2, 0, 3});
+        assertEquals(4, table.size());
+        Multiset<Integer> result = HashMultiset.create();
+        for (int i = 0; i < 60000; i++) {
+            result.add(table.next());
+        }
+        assertEquals(0, result.count(2));
+        assertTrue(checkRatio(result.count(1), result.count(0), 2));
+        assertTrue(checkRatio(result.count(3), result.count(0), 3));
+    }
+
+    @Test
+    void testSingle() {
+        AliasTable table = new AliasTable(new double[] {0, 0, 5});
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(2, table.next());
+        }
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {0, 0}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1, -1}));
+    }
+}
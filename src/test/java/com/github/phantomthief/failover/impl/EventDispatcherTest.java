@@ -0,0 +1,45 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.DOWN;
+import static com.github.phantomthief.failover.impl.WeightEvent.Type.WEIGHT_CHANGED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class EventDispatcherTest {
+
+    @Test
+    void testChangesPublishedOutOfOrder() {
+        WeightTable<String> table = new WeightTable<>(ImmutableMap.of("s1", 100));
+        Slot<String> slot = table.get("s1");
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        EventDispatcher<String> dispatcher = new EventDispatcher<>(
+                it -> events.add(it.type() + ":" + it.oldWeight() + "->" + it.newWeight()), tasks::add, 10);
+        slot.compareAndSetWeight(100, 95);
+        slot.compareAndSetWeight(95, 90);
+        // the later change is published first.
+        dispatcher.publish(slot, new WeightEvent<>(WEIGHT_CHANGED, "s1", 95, 90));
+        dispatcher.publish(slot, new WeightEvent<>(WEIGHT_CHANGED, "s1", 100, 95));
+        tasks.forEach(Runnable::run);
+        tasks.clear();
+        assertEquals(ImmutableList.of("WEIGHT_CHANGED:95->90"), events);
+
+        // a change queued before a transition ends at where the transition starts.
+        events.clear();
+        slot.compareAndSetWeight(90, 85);
+        dispatcher.publish(slot, new WeightEvent<>(WEIGHT_CHANGED, "s1", 90, 85));
+        slot.compareAndSetWeight(85, 0);
+        dispatcher.publish(slot, new WeightEvent<>(DOWN, "s1", 85, 0));
+        tasks.forEach(Runnable::run);
+        assertEquals(ImmutableList.of("WEIGHT_CHANGED:90->85", "DOWN:85->0"), events);
+        assertEquals(0, dispatcher.queued());
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.github.phantomthief.failover.WeighTestUtils.checkRatio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+class FenwickTreeTest {
+
+    @Test
+    void test() {
+        FenwickTree tree = new FenwickTree(new double[] {1, 2, 0, 3, 4});
+        Multiset<Integer> result = HashMultiset.create();
+        for (int i = 0; i < 50000; i++) {
+            result.add(tree.next());
+        }
+        assertEquals(0, result.count(2));
+        assertTrue(checkRatio(result.count(1), result.count(0), 2));
+        assertTrue(checkRatio(result.count(3), result.count(0), 3));
+        assertTrue(checkRatio(result.count(4), result.count(0), 4));
+
+        FenwickTree copy = tree.copy();
+        copy.remove(4);
+        result.clear();
+        for (int i = 0; i < 50000; i++) {
+            result.add(copy.next());
+        }
+        assertEquals(0, result.count(4));
+        assertTrue(checkRatio(result.count(3), result.count(0), 3));
+
+        // the original one is not affected.
+        result.clear();
+        for (int i = 0; i < 50000; i++) {
+            result.add(tree.next());
+        }
+        assertTrue(checkRatio(result.count(4), result.count(0), 4));
+    }
+
+    @Test
+    void testWithoutReplacement() {
+        double[] weights = new double[1000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i % 7;
+        }
+        FenwickTree tree = new FenwickTree(weights);
+        Set<Integer> picked = new HashSet<>();
+        while (!tree.isEmpty()) {
+            int index = tree.next();
+            assertTrue(weights[index] > 0);
+            assertTrue(picked.add(index));
+            tree.remove(index);
+        }
+        assertEquals(1000 - 143, picked.size());
+        assertEquals(-1, tree.next());
+        assertFalse(picked.contains(0));
+    }
+}
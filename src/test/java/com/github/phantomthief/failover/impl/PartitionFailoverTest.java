@@ -23,6 +23,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.github.phantomthief.failover.Failover;
+import com.github.phantomthief.failover.OutcomeBatch;
 import com.google.common.collect.ImmutableMap;
 
 /**
@@ -517,4 +518,16 @@ class PartitionFailoverTest<T> {
         assertEquals(3, failover.getFailed().size());
     }
 
+    @Test
+    public void testRecordOutcomesOfUnknown() {
+        PartitionFailover<Res> failover = PartitionFailoverBuilder.<Res> newBuilder()
+                .checker(r -> 1.0)
+                .corePartitionSize(2)
+                .build(ImmutableMap.of(r0, 100, r1, 100));
+        Res unknown = new Res(100);
+        failover.recordOutcomes(new OutcomeBatch<Res>().fail(unknown, 3).fail(r0, 100));
+        assertEquals(1, failover.getFailed().size());
+        assertEquals(2, failover.getAll().size());
+    }
+
 }
@@ -0,0 +1,126 @@
+package com.github.phantomthief.failover.impl;
+
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multiset;
+
+class PowerOfTwoChoicesFailoverTest {
+
+    @Test
+    void testSlowNode() {
+        PowerOfTwoChoicesFailover<String> failover = PowerOfTwoChoicesFailover.<String> newBuilder()
+                .checker(it -> 0.0)
+                .build(Arrays.asList("fast", "slow"));
+        Multiset<String> result = HashMultiset.create();
+        for (int i = 0; i < 10000; i++) {
+            String one = failover.getOneAvailable();
+            result.add(one);
+            failover.success(one, MILLISECONDS.toNanos(one.equals("fast") ? 1 : 20));
+        }
+        assertTrue(result.count("fast") > result.count("slow") * 2, result.toString());
+        assertEquals(0, failover.inflight("fast"));
+        assertEquals(0, failover.inflight("slow"));
+        failover.close();
+    }
+
+    @Test
+    void testInflight() {
+        PowerOfTwoChoicesFailover<String> failover = PowerOfTwoChoicesFailover.<String> newBuilder()
+                .checker(it -> 0.0)
+                .build(Arrays.asList("s1", "s2"));
+        failover.success("s1", MILLISECONDS.toNanos(10));
+        failover.success("s2", MILLISECONDS.toNanos(10));
+        // the busier one is avoided once it's picked as a candidate.
+        Multiset<String> result = HashMultiset.create();
+        for (int i = 0; i < 100; i++) {
+            result.add(failover.getOneAvailable());
+        }
+        assertEquals(100, failover.inflight("s1") + failover.inflight("s2"));
+        assertTrue(Math.abs(result.count("s1") - result.count("s2")) < 30, result.toString());
+
+        failover.fail("s1");
+        failover.down("s2");
+        assertEquals(98, failover.inflight("s1") + failover.inflight("s2"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("s1", failover.getOneAvailable());
+        }
+        failover.down("s1");
+        assertNull(failover.getOneAvailable());
+        failover.close();
+    }
+
+    @Test
+    void testDistinctCandidates() {
+        PowerOfTwoChoicesFailover<String> failover = PowerOfTwoChoicesFailover.<String> newBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("heavy", 1000, "light", 1));
+        failover.success("light", MILLISECONDS.toNanos(1));
+        failover.success("heavy", MILLISECONDS.toNanos(100));
+        // the light one is always a candidate besides the heavy one, and it's the less loaded one.
+        for (int i = 0; i < 100; i++) {
+            String one = failover.getOneAvailable();
+            assertEquals("light", one);
+            failover.success(one, MILLISECONDS.toNanos(1));
+        }
+        failover.down("light");
+        assertEquals("heavy", failover.getOneAvailable());
+        failover.close();
+    }
+
+    @Test
+    void testOneAvailable() {
+        PowerOfTwoChoicesFailover<String> failover = PowerOfTwoChoicesFailover.<String> newBuilder()
+                .checker(it -> 0.0)
+                .build(Arrays.asList("s1", "s2"));
+        failover.down("s2");
+        for (int i = 0; i < 100; i++) {
+            assertEquals("s1", failover.getOneAvailable());
+        }
+        assertEquals(100, failover.inflight("s1"));
+        assertEquals(0, failover.inflight("s2"));
+        failover.close();
+    }
+
+    @Test
+    void testWeightFailoverOptions() {
+        List<String> events = new ArrayList<>();
+        PowerOfTwoChoicesFailover<String> failover = PowerOfTwoChoicesFailover.<String> newBuilder()
+                .checker(it -> 0.0)
+                .onEvent(it -> events.add(it.type() + ":" + it.object()))
+                .asyncListeners(100, Runnable::run)
+                .checkBackoff(1, MINUTES)
+                .passiveRecovery(0.5, 1)
+                .recordStats()
+                .build(Arrays.asList("s1", "s2"));
+        failover.down("s2");
+        assertEquals(Arrays.asList("MIN_WEIGHT:s2", "DOWN:s2"), events);
+        assertEquals("s1", failover.getOneAvailableExclude(singleton("s2")));
+        assertEquals(1, failover.stats().get("s1").selectionCount());
+        failover.close();
+    }
+
+    @Test
+    void testUpdateResources() {
+        PowerOfTwoChoicesFailover<String> failover = PowerOfTwoChoicesFailover.<String> newBuilder()
+                .checker(it -> 0.0)
+                .build(Arrays.asList("s1", "s2"));
+        assertEquals(1, failover.inflight(failover.getOneAvailable()));
+        failover.updateResources(ImmutableMap.of("s3", 100));
+        assertEquals(0, failover.inflight("s1") + failover.inflight("s2"));
+        assertEquals("s3", failover.getOneAvailable());
+        failover.close();
+    }
+}
@@ -3,6 +3,7 @@ package com.github.phantomthief.failover.impl;
 import static com.github.phantomthief.failover.WeighTestUtils.checkRatio;
 import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -10,8 +11,10 @@ import java.util.function.Predicate;
 
 import org.junit.jupiter.api.Test;
 
+import com.github.phantomthief.failover.OutcomeBatch;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
 
 /**
@@ -45,4 +48,19 @@ class RecoverableCheckFailoverTest {
         }
         assertTrue(checkRatio(result.count("s2"), result.count("s1"), 1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRecordOutcomes() {
+        RecoverableCheckFailover<String> failover = RecoverableCheckFailover
+                .<String> newGenericBuilder().setChecker(it -> false)
+                .setFailCount(10)
+                .setFailDuration(1, SECONDS)
+                .setRecoveryCheckDuration(1, SECONDS)
+                .build(ImmutableList.of("s1", "s2"));
+        failover.recordOutcomes(new OutcomeBatch<String>().success("s1", 100).fail("s1", 9).fail("s2", 20));
+        assertEquals(ImmutableSet.of("s2"), failover.getFailed());
+        failover.recordOutcomes(new OutcomeBatch<String>().fail("s1"));
+        assertEquals(ImmutableSet.of("s1", "s2"), failover.getFailed());
+        failover.close();
+    }
+}
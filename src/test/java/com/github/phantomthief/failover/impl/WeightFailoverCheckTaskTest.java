@@ -1,5 +1,7 @@
 package com.github.phantomthief.failover.impl;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,4 +39,16 @@ class WeightFailoverCheckTaskTest {
         Assertions.assertTrue(closed.get());
         Assertions.assertTrue(recoveryFuture.get().isCancelled());
     }
+
+    @Test
+    public void testJittered() {
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long delay = WeightFailoverCheckTask.jittered(1000);
+            Assertions.assertTrue(delay >= 750 && delay <= 1250, "delay:" + delay);
+            delays.add(delay);
+        }
+        Assertions.assertTrue(delays.size() > 1);
+        Assertions.assertEquals(1, WeightFailoverCheckTask.jittered(1));
+    }
 }
@@ -2,9 +2,12 @@ package com.github.phantomthief.failover.impl;
 
 import static com.github.phantomthief.failover.WeighTestUtils.checkRatio;
 import static com.google.common.collect.ImmutableList.of;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
 import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
 import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.singleton;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toMap;
@@ -13,14 +16,28 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
 
@@ -28,8 +45,12 @@ import org.apache.commons.math3.stat.inference.BinomialTest;
 import org.junit.jupiter.api.Test;
 
 import com.github.phantomthief.failover.Failover;
+import com.github.phantomthief.failover.OutcomeBatch;
+import com.github.phantomthief.failover.util.HashedWheelCheckScheduler;
+import com.github.phantomthief.failover.util.SharedCheckExecutorHolder;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.TreeMultiset;
 
@@ -228,6 +249,822 @@ class WeightFailoverTest {
         assertTrue(checkRatio(result.count("s3"), result.count("s1"), 3));
     }
 
+    @Test
+    void testWeightChangedOnOneAvailable() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .failReduce(50)
+                .successIncrease(10)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        failover.fail("s2");
+        Multiset<String> result = HashMultiset.create();
+        for (int i = 0; i < 10000; i++) {
+            result.add(failover.getOneAvailable());
+        }
+        assertTrue(checkRatio(result.count("s1"), result.count("s2"), 2));
+
+        for (int i = 0; i < 5; i++) {
+            failover.success("s2");
+        }
+        assertEquals(100, failover.currentWeight("s2"));
+        result.clear();
+        for (int i = 0; i < 10000; i++) {
+            result.add(failover.getOneAvailable());
+        }
+        assertTrue(checkRatio(result.count("s1"), result.count("s2"), 1));
+
+        failover.down("s1");
+        failover.down("s2");
+        assertEquals(null, failover.getOneAvailable());
+    }
+
+    @Test
+    void testExclude() {
+        Map<String, Integer> map = IntStream.range(0, 2000).boxed()
+                .collect(toMap(it -> "s" + it, it -> it % 10));
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .build(map);
+        List<String> exclusions = Arrays.asList("s1", "s2", "s3");
+        List<String> available = failover.getAvailableExclude(exclusions);
+        assertEquals(1800 - 3, available.size());
+        assertEquals(available.size(), new HashSet<>(available).size());
+        assertFalse(available.contains("s0"));
+        assertFalse(available.contains("s1"));
+
+        List<String> fifty = failover.getAvailable(50);
+        assertEquals(50, fifty.size());
+        assertEquals(50, new HashSet<>(fifty).size());
+
+        WeightFailover<String> small = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .build(ImmutableMap.of("s1", 1, "s2", 2, "s3", 3));
+        Multiset<String> result = HashMultiset.create();
+        for (int i = 0; i < 10000; i++) {
+            result.add(small.getOneAvailableExclude(of("s2")));
+        }
+        assertEquals(0, result.count("s2"));
+        assertTrue(checkRatio(result.count("s3"), result.count("s1"), 3));
+        assertEquals(null, small.getOneAvailableExclude(of("s1", "s2", "s3")));
+
+        // almost all picks hit the excluded one, so it's the fallback mostly.
+        WeightFailover<String> skewed = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .build(ImmutableMap.of("s1", 1, "s2", 10000, "s3", 3));
+        result.clear();
+        for (int i = 0; i < 10000; i++) {
+            result.add(skewed.getOneAvailableExclude(of("s2")));
+        }
+        assertEquals(0, result.count("s2"));
+        assertTrue(checkRatio(result.count("s3"), result.count("s1"), 3));
+    }
+
+    @Test
+    void testConcurrentUpdate() throws InterruptedException {
+        AtomicInteger minWeightCount = new AtomicInteger();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .failReduce(1)
+                .onMinWeight(it -> minWeightCount.incrementAndGet())
+                .build(ImmutableMap.of("s1", 4000, "s2", 100));
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    failover.fail("s1");
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failover.currentWeight("s1"));
+        assertEquals(1, minWeightCount.get());
+        assertEquals(singleton("s1"), failover.getFailed());
+    }
+
+    @Test
+    void testSlowListenerNotBlockingOthers() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .onMinWeight(it -> {
+                    entered.countDown();
+                    awaitUninterruptibly(release);
+                })
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        Thread thread = new Thread(() -> failover.down("s1"));
+        thread.start();
+        entered.await();
+        // the listener is still running, but others can update the same object.
+        failover.success("s1");
+        failover.fail("s2");
+        assertEquals(1, failover.currentWeight("s1"));
+        assertEquals(95, failover.currentWeight("s2"));
+        release.countDown();
+        thread.join();
+    }
+
+    @Test
+    void testAsyncListeners() {
+        CountDownLatch release = new CountDownLatch(1);
+        List<WeightEvent<String>> events = new CopyOnWriteArrayList<>();
+        List<String> minWeight = new CopyOnWriteArrayList<>();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .checkDuration(10, MILLISECONDS)
+                .onMinWeight(it -> {
+                    awaitUninterruptibly(release);
+                    minWeight.add(it);
+                })
+                .onEvent(events::add)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        // the listener is blocked, but down returns.
+        failover.down("s1");
+        assertEquals(0, failover.currentWeight("s1"));
+        for (int i = 0; i < 5; i++) {
+            failover.fail("s2");
+        }
+        assertTrue(minWeight.isEmpty());
+        release.countDown();
+        waitUntil(() -> events.stream().anyMatch(it -> it.type() == WeightEvent.Type.RECOVERED));
+        assertEquals(of("s1"), minWeight);
+        List<WeightEvent.Type> s1Types = new ArrayList<>();
+        for (WeightEvent<String> event : events) {
+            if (event.object().equals("s1") && event.type() != WeightEvent.Type.WEIGHT_CHANGED) {
+                s1Types.add(event.type());
+            }
+        }
+        assertEquals(of(WeightEvent.Type.MIN_WEIGHT, WeightEvent.Type.DOWN, WeightEvent.Type.RECOVERED),
+                s1Types);
+        // fails of s2 are coalesced while the dispatcher was blocked.
+        List<WeightEvent<String>> s2Events = new ArrayList<>();
+        for (WeightEvent<String> event : events) {
+            if (event.object().equals("s2")) {
+                s2Events.add(event);
+            }
+        }
+        assertEquals(1, s2Events.size());
+        assertEquals(100, s2Events.get(0).oldWeight());
+        assertEquals(75, s2Events.get(0).newWeight());
+        failover.close();
+    }
+
+    @Test
+    void testAsyncListenersInOrder() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .onEvent(it -> events.add(it.type() + ":" + it.oldWeight() + "->" + it.newWeight()))
+                .asyncListeners(100, tasks::add)
+                .build(ImmutableMap.of("s1", 100));
+        failover.fail("s1");
+        failover.fail("s1");
+        failover.down("s1");
+        failover.success("s1");
+        failover.success("s1");
+        tasks.forEach(Runnable::run);
+        // a transition has only its own event, and changes after it are not merged into the one before it.
+        assertEquals(of("WEIGHT_CHANGED:100->90", "MIN_WEIGHT:90->0", "DOWN:90->0", "RECOVERED:0->1",
+                "WEIGHT_CHANGED:1->2"), events);
+        failover.close();
+    }
+
+    @Test
+    void testFiltered() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("a1", 100, "a2", 100, "b1", 100));
+        Failover<String> view = failover.filtered("a", it -> it.startsWith("a"));
+        assertTrue(view == failover.filtered("a", it -> it.startsWith("a")));
+        assertEquals(of("a1", "a2"), view.getAll());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(view.getOneAvailable().startsWith("a"));
+        }
+        assertEquals(2, view.getAvailable(3).size());
+
+        view.down("a1");
+        assertEquals(0, failover.currentWeight("a1"));
+        assertEquals(of("a2"), view.getAvailable());
+        assertEquals(singleton("a1"), view.getFailed());
+        assertEquals("a2", view.getOneAvailableExclude(singleton("b1")));
+        assertNull(view.getOneAvailableExclude(singleton("a2")));
+        assertEquals(2, failover.getAvailable().size());
+    }
+
+    @Test
+    void testLargeFanOut() {
+        Map<String, Integer> weights = IntStream.range(0, 200).boxed()
+                .collect(toMap(i -> "s" + i, i -> 100));
+        Predicate<String> filter = it -> !it.endsWith("9");
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .filter(filter)
+                .build(weights);
+        failover.down("s1");
+        List<String> result = failover.getAvailableExclude(of("s2", "s3"));
+        assertEquals(200 - 20 - 3, result.size());
+        assertEquals(result.size(), new HashSet<>(result).size());
+        result = failover.getAvailable(50);
+        assertEquals(50, result.size());
+        assertEquals(50, new HashSet<>(result).size());
+        assertTrue(result.stream().allMatch(filter));
+        assertFalse(result.contains("s1"));
+    }
+
+    @Test
+    void testStats() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .checkDuration(10, MILLISECONDS)
+                .recordStats()
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        for (int i = 0; i < 10; i++) {
+            failover.getOneAvailable();
+        }
+        failover.getAvailable(2);
+        failover.success("s1");
+        failover.fail("s1");
+        failover.down("s2");
+        ResourceStats s1 = failover.stats().get("s1");
+        ResourceStats s2 = failover.stats().get("s2");
+        assertEquals(1, s1.successCount());
+        assertEquals(1, s1.failureCount());
+        assertEquals(95, s1.currentWeight());
+        assertEquals(0, s1.lastTransitionTime());
+        assertEquals(12, s1.selectionCount() + s2.selectionCount());
+        assertEquals(1, s2.downCount());
+        assertEquals(0, s2.currentWeight());
+        assertTrue(s2.lastTransitionTime() > 0);
+
+        waitUntil(() -> failover.stats().get("s2").recoveryCount() == 1);
+        s2 = failover.stats().get("s2");
+        assertEquals(100, s2.currentWeight());
+        long minWeightTime = s2.minWeightTime(MILLISECONDS);
+        assertTrue(minWeightTime > 0);
+        // it doesn't grow after the recovery.
+        sleepUninterruptibly(20, MILLISECONDS);
+        assertEquals(minWeightTime, failover.stats().get("s2").minWeightTime(MILLISECONDS));
+        failover.close();
+    }
+
+    @Test
+    void testLatencyAware() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .latencyAware(1, SECONDS)
+                .weightRefreshInterval(0, MILLISECONDS)
+                .build(ImmutableMap.of("fast", 100, "slow", 100));
+        failover.success("fast", MILLISECONDS.toNanos(10));
+        failover.success("slow", MILLISECONDS.toNanos(40));
+        Multiset<String> result = HashMultiset.create();
+        for (int i = 0; i < 50000; i++) {
+            result.add(failover.getOneAvailable());
+        }
+        assertTrue(checkRatio(result.count("fast"), result.count("slow"), 4));
+        // weight is unchanged, only the selection is affected.
+        assertEquals(100, failover.currentWeight("slow"));
+        assertEquals(2, failover.getAvailable().size());
+    }
+
+    @Test
+    void testSlowStart() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .checkDuration(10, MILLISECONDS)
+                .slowStart(1, SECONDS)
+                .autoAddOnMissing(100)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        failover.down("s2");
+        waitUntil(() -> failover.currentWeight("s2") == 100);
+        Multiset<String> result = HashMultiset.create();
+        for (int i = 0; i < 10000; i++) {
+            result.add(failover.getOneAvailable());
+        }
+        // about 10%~30% of the full weight at the beginning.
+        assertTrue(result.count("s2") < result.count("s1") / 2, result.toString());
+
+        failover.success("s3");
+        assertEquals(100, failover.currentWeight("s3"));
+        sleepUninterruptibly(1200, MILLISECONDS);
+        result.clear();
+        for (int i = 0; i < 30000; i++) {
+            result.add(failover.getOneAvailable());
+        }
+        assertTrue(checkRatio(result.count("s2"), result.count("s1"), 1), result.toString());
+        assertTrue(checkRatio(result.count("s3"), result.count("s1"), 1), result.toString());
+        failover.close();
+    }
+
+    @Test
+    void testUpdateResources() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("s1", 100, "s2", 100, "s3", 100));
+        failover.fail("s1");
+        failover.down("s2");
+        failover.updateResources(ImmutableMap.of("s1", 100, "s4", 100));
+        assertEquals(95, failover.currentWeight("s1"));
+        assertEquals(100, failover.currentWeight("s4"));
+        assertEquals(2, failover.getAll().size());
+        assertTrue(failover.getFailed().isEmpty());
+        for (int i = 0; i < 100; i++) {
+            String one = failover.getOneAvailable();
+            assertTrue(one.equals("s1") || one.equals("s4"));
+        }
+        assertEquals(singleton("s4"), new HashSet<>(failover.getAvailableExclude(singleton("s1"))));
+        failover.close();
+    }
+
+    @Test
+    void testUpdateInitWeightDuringCheck() throws InterruptedException {
+        CountDownLatch checking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch recovered = new CountDownLatch(1);
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    checking.countDown();
+                    awaitUninterruptibly(release);
+                    return 0.5;
+                })
+                .onRecovered(it -> recovered.countDown())
+                .checkDuration(10, MILLISECONDS)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        failover.down("s1");
+        assertTrue(checking.await(5, SECONDS));
+        failover.updateResources(ImmutableMap.of("s1", 200, "s2", 50));
+        failover.fail("s2");
+        release.countDown();
+        // the check started before the update recovers the same object.
+        assertTrue(recovered.await(5, SECONDS));
+        assertEquals(200, failover.initWeight("s1"));
+        assertEquals(100, failover.currentWeight("s1"));
+        assertEquals(45, failover.currentWeight("s2"));
+        failover.close();
+    }
+
+    @Test
+    void testAsyncChecker() {
+        Map<String, Integer> map = IntStream.range(0, 20).boxed()
+                .collect(toMap(it -> "s" + it, it -> 100));
+        AtomicInteger maxInflight = new AtomicInteger();
+        AtomicInteger inflight = new AtomicInteger();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .asyncChecker(it -> {
+                    maxInflight.accumulateAndGet(inflight.incrementAndGet(), Math::max);
+                    CompletableFuture<Double> future = new CompletableFuture<>();
+                    SharedCheckExecutorHolder.getInstance().schedule(() -> {
+                        inflight.decrementAndGet();
+                        future.complete(1.0);
+                    }, 200, MILLISECONDS);
+                    return future;
+                })
+                .checkParallelism(10)
+                .checkDuration(10, MILLISECONDS)
+                .build(map);
+        map.keySet().forEach(failover::down);
+        waitUntil(() -> failover.getFailed().isEmpty());
+        // probes are in parallel, instead of one by one.
+        assertTrue(maxInflight.get() > 1 && maxInflight.get() <= 10, "max inflight:" + maxInflight.get());
+        failover.close();
+    }
+
+    @Test
+    void testCheckTimeout() {
+        AtomicInteger interrupted = new AtomicInteger();
+        AtomicInteger checked = new AtomicInteger();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    if (checked.incrementAndGet() == 1) {
+                        try {
+                            Thread.sleep(SECONDS.toMillis(10));
+                        } catch (InterruptedException e) {
+                            interrupted.incrementAndGet();
+                        }
+                        return 1.0;
+                    }
+                    return 0.5;
+                })
+                .checkTimeout(100, MILLISECONDS)
+                .checkDuration(10, MILLISECONDS)
+                .build(ImmutableMap.of("s1", 100));
+        failover.down("s1");
+        // the hanging check was cancelled, and the next round recovered it.
+        waitUntil(() -> failover.currentWeight("s1") != 0 && interrupted.get() == 1);
+        assertEquals(50, failover.currentWeight("s1"));
+        failover.close();
+    }
+
+    @Test
+    void testBuildTwice() throws InterruptedException {
+        List<String> checked = new CopyOnWriteArrayList<>();
+        CountDownLatch secondChecked = new CountDownLatch(1);
+        GenericWeightFailoverBuilder<String> builder = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    checked.add(it);
+                    return 0.0;
+                })
+                .checkParallelism(2)
+                .checkDuration(10, MILLISECONDS);
+        WeightFailover<String> first = builder.build(ImmutableMap.of("s1", 100));
+        WeightFailover<String> second = builder
+                .checker(it -> {
+                    secondChecked.countDown();
+                    return 0.0;
+                })
+                .build(ImmutableMap.of("s2", 100));
+        // the second failover doesn't keep the checker wrapped for the first one.
+        second.down("s2");
+        assertTrue(secondChecked.await(5, SECONDS));
+        assertFalse(checked.contains("s2"));
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void testCheckBackoff() {
+        List<Long> checked = new CopyOnWriteArrayList<>();
+        boolean[] alive = {false};
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    checked.add(System.nanoTime());
+                    return alive[0];
+                }, 1)
+                .checkDuration(10, MILLISECONDS)
+                .checkBackoff(200, MILLISECONDS)
+                .build(ImmutableMap.of("s1", 100));
+        failover.down("s1");
+        waitUntil(() -> checked.size() >= 5);
+        // the 4th failed check waits for at least 80ms, instead of about 10ms without backoff.
+        long interval = NANOSECONDS.toMillis(checked.get(4) - checked.get(3));
+        assertTrue(interval >= 80, "interval:" + interval);
+        alive[0] = true;
+        waitUntil(() -> failover.currentWeight("s1") == 100);
+
+        // it's reset on recovery.
+        checked.clear();
+        failover.down("s1");
+        waitUntil(() -> failover.currentWeight("s1") == 100);
+        assertEquals(1, checked.size());
+        failover.close();
+    }
+
+    @Test
+    void testGetAll() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        List<String> all = failover.getAll();
+        assertEquals(ImmutableSet.of("s1", "s2"), new HashSet<>(all));
+        assertEquals(2, failover.size());
+        failover.down("s1");
+        assertSame(all, failover.getAll());
+
+        failover.updateResources(ImmutableMap.of("s2", 100, "s3", 100, "s4", 100));
+        assertEquals(ImmutableSet.of("s2", "s3", "s4"), new HashSet<>(failover.getAll()));
+        assertEquals(3, failover.size());
+        failover.close();
+    }
+
+    @Test
+    void testAvailableKeptOnWeightChanges() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        Failover<String> view = failover.filtered("s1", "s1"::equals);
+        List<String> available = failover.getAvailable();
+        List<String> viewAvailable = view.getAvailable();
+        for (int i = 0; i < 10; i++) {
+            failover.fail("s1");
+            assertSame(available, failover.getAvailable());
+            assertSame(viewAvailable, view.getAvailable());
+        }
+        // the weights are still applied to selection.
+        assertEquals(50, failover.currentWeight("s1"));
+        failover.down("s1");
+        assertEquals(of("s2"), failover.getAvailable());
+        assertTrue(view.getAvailable().isEmpty());
+        failover.close();
+    }
+
+    @Test
+    void testFailedCount() {
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("s1", 100, "s2", 100, "s3", 100));
+        assertEquals(0, failover.failedCount());
+        assertEquals(3, failover.availableCount());
+        Set<String> failed = failover.getFailed();
+        assertTrue(failed.isEmpty());
+        // cached until the failed set changes.
+        failover.fail("s1");
+        assertSame(failed, failover.getFailed());
+
+        failover.down("s1");
+        failover.down("s2");
+        assertEquals(ImmutableSet.of("s1", "s2"), failover.getFailed());
+        assertSame(failover.getFailed(), failover.getFailed());
+        assertEquals(2, failover.failedCount());
+        assertEquals(1, failover.availableCount());
+
+        failover.success("s1");
+        assertEquals(singleton("s2"), failover.getFailed());
+        failover.updateResources(ImmutableMap.of("s1", 100, "s3", 100));
+        assertTrue(failover.getFailed().isEmpty());
+        assertEquals(0, failover.failedCount());
+        assertEquals(2, failover.availableCount());
+        failover.close();
+    }
+
+    @Test
+    void testTimingWheel() {
+        HashedWheelCheckScheduler wheel = HashedWheelCheckScheduler.getInstance();
+        AtomicInteger checked = new AtomicInteger();
+        boolean[] alive = {false};
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    checked.incrementAndGet();
+                    return alive[0];
+                }, 1)
+                .checkDuration(10, MILLISECONDS)
+                .timingWheel()
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        // nothing is scheduled before anything is down.
+        assertFalse(failover.recoveryFuture.isInitialized());
+        failover.down("s1");
+        failover.down("s2");
+        waitUntil(() -> checked.get() > 10);
+        ScheduledFuture<?> schedule = failover.recoveryFuture.get();
+        assertTrue(schedule.getDelay(MILLISECONDS) < 100);
+        assertThrows(TimeoutException.class, () -> schedule.get(10, MILLISECONDS));
+
+        // probes are limited globally.
+        wheel.setProbeRateLimit(5);
+        try {
+            long start = System.nanoTime();
+            checked.set(0);
+            waitUntil(() -> checked.get() >= 5);
+            // about 600ms for 5 checks, instead of 25ms without the limit.
+            long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsed >= 400, "elapsed:" + elapsed);
+        } finally {
+            wheel.setProbeRateLimit(0);
+        }
+
+        // it's off the wheel after all recovered, and back after down again.
+        alive[0] = true;
+        waitUntil(() -> failover.currentWeight("s1") == 100 && failover.currentWeight("s2") == 100);
+        waitUntil(() -> wheel.pending() == 0);
+        failover.down("s1");
+        waitUntil(() -> failover.currentWeight("s1") == 100);
+        waitUntil(() -> wheel.pending() == 0);
+
+        failover.down("s1");
+        failover.close();
+        assertEquals(0, wheel.pending());
+        assertTrue(schedule.isCancelled());
+        assertThrows(CancellationException.class, schedule::get);
+    }
+
+    @Test
+    void testTimingWheelBlockingChecker() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<WeightFailover<String>> blocked = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            String object = "s" + i;
+            WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                    .checker(it -> {
+                        awaitUninterruptibly(release);
+                        return 1.0;
+                    })
+                    .checkDuration(10, MILLISECONDS)
+                    .timingWheel()
+                    .build(ImmutableMap.of(object, 100));
+            failover.down(object);
+            blocked.add(failover);
+        }
+        CountDownLatch checked = new CountDownLatch(1);
+        WeightFailover<String> other = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    checked.countDown();
+                    return 0.0;
+                })
+                .checkDuration(10, MILLISECONDS)
+                .timingWheel()
+                .build(ImmutableMap.of("s1", 100));
+        other.down("s1");
+        try {
+            // blocking checks of other failovers don't hold the workers of the wheel.
+            assertTrue(checked.await(5, SECONDS));
+        } finally {
+            release.countDown();
+            blocked.forEach(WeightFailover::close);
+            other.close();
+        }
+    }
+
+    @Test
+    void testSharedHealth() {
+        SharedHealthRegistry registry = new SharedHealthRegistry();
+        List<Long> checked = new CopyOnWriteArrayList<>();
+        boolean[] alive = {false};
+        List<WeightFailover<String>> failovers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            failovers.add(WeightFailover.<String> newGenericBuilder()
+                    .checker(it -> {
+                        checked.add(System.nanoTime());
+                        return alive[0];
+                    }, 1)
+                    .checkDuration(10, MILLISECONDS)
+                    .sharedHealth(registry)
+                    .build(ImmutableMap.of("s1", 100, "s2", 100)));
+        }
+        WeightFailover<String> first = failovers.get(0);
+        first.down("s1");
+        for (WeightFailover<String> failover : failovers) {
+            assertEquals(0, failover.currentWeight("s1"));
+            assertEquals(100, failover.currentWeight("s2"));
+        }
+        assertEquals(singleton("s1"), registry.downs());
+
+        // checked once per check duration by all of them, instead of 3 times.
+        waitUntil(() -> checked.size() >= 11);
+        long elapsed = NANOSECONDS.toMillis(checked.get(10) - checked.get(0));
+        assertTrue(elapsed >= 80, "elapsed:" + elapsed);
+
+        alive[0] = true;
+        waitUntil(() -> failovers.stream().allMatch(it -> it.currentWeight("s1") == 100));
+        assertTrue(registry.downs().isEmpty());
+
+        // a failover joining later gets resources down already.
+        alive[0] = false;
+        failovers.get(1).down("s2");
+        WeightFailover<String> late = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .sharedHealth(registry)
+                .build(ImmutableMap.of("s2", 100));
+        assertEquals(0, late.currentWeight("s2"));
+        assertEquals(singleton("s2"), registry.downs());
+        alive[0] = true;
+        late.success("s2");
+        for (WeightFailover<String> failover : failovers) {
+            assertTrue(failover.currentWeight("s2") > 0);
+        }
+
+        // a closed one is not updated any more.
+        late.close();
+        first.down("s2");
+        assertTrue(late.currentWeight("s2") > 0);
+        failovers.forEach(WeightFailover::close);
+    }
+
+    @Test
+    void testSharedHealthKey() {
+        SharedHealthRegistry registry = new SharedHealthRegistry();
+        WeightFailover<String> http = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .sharedHealth(registry, it -> it.substring(it.indexOf("://") + 3))
+                .build(ImmutableMap.of("http://h1", 100, "http://h2", 100));
+        WeightFailover<String> grpc = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .sharedHealth(registry, it -> it.substring(it.indexOf("://") + 3))
+                .build(ImmutableMap.of("grpc://h1", 100, "grpc://h2", 100));
+        http.down("http://h1");
+        assertEquals(singleton("grpc://h1"), grpc.getFailed());
+        grpc.success("grpc://h1");
+        assertTrue(http.getFailed().isEmpty());
+        http.close();
+        grpc.close();
+    }
+
+    @Test
+    void testPassiveRecovery() {
+        List<String> recovered = new CopyOnWriteArrayList<>();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .passiveRecovery(0.1, 5)
+                .onRecovered(recovered::add)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        failover.down("s1");
+        long start = currentTimeMillis();
+        int picked = 0;
+        for (int i = 0; i < 100000; i++) {
+            if ("s1".equals(failover.getOneAvailable())) {
+                picked++;
+            }
+        }
+        // bounded by the rate limiter, instead of 10% of selections.
+        long seconds = (currentTimeMillis() - start) / 1000;
+        assertTrue(picked > 0 && picked <= 5 * (seconds + 2), "picked:" + picked);
+        // permits are refilled, but an excluded object is still not picked.
+        sleepUninterruptibly(1, SECONDS);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("s2", failover.getOneAvailableExclude(of("s1")));
+        }
+        assertEquals(0, failover.currentWeight("s1"));
+
+        failover.success("s1");
+        assertTrue(failover.currentWeight("s1") > 0);
+        assertEquals(of("s1"), recovered);
+        assertTrue(failover.getFailed().isEmpty());
+
+        // so are batched successes.
+        failover.down("s2");
+        failover.recordOutcomes(new OutcomeBatch<String>().success("s2", 2));
+        assertEquals(2, failover.currentWeight("s2"));
+        assertEquals(of("s1", "s2"), recovered);
+        failover.close();
+    }
+
+    @Test
+    void testRecordOutcomes() {
+        List<String> minWeight = new ArrayList<>();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .onMinWeight(minWeight::add)
+                .build(ImmutableMap.of("s1", 100, "s2", 100, "s3", 100));
+        failover.fail("s1");
+        OutcomeBatch<String> batch = new OutcomeBatch<String>()
+                .success("s1", 3)
+                .fail("s2", 3)
+                .fail("s3", 100)
+                .success("s3");
+        failover.recordOutcomes(batch);
+        assertEquals(98, failover.currentWeight("s1"));
+        assertEquals(85, failover.currentWeight("s2"));
+        assertEquals(0, failover.currentWeight("s3"));
+        assertEquals(of("s3"), minWeight);
+        assertEquals(singleton("s3"), failover.getFailed());
+
+        // the same result as calling one by one.
+        WeightFailover<String> other = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .build(ImmutableMap.of("s1", 100, "s2", 100, "s3", 100));
+        other.fail("s1");
+        Failover<String> defaultImpl = new Failover<String>() {
+
+            @Override
+            public List<String> getAll() {
+                return other.getAll();
+            }
+
+            @Override
+            public void success(String object) {
+                other.success(object);
+            }
+
+            @Override
+            public void fail(String object) {
+                other.fail(object);
+            }
+
+            @Override
+            public void down(String object) {
+                other.down(object);
+            }
+
+            @Override
+            public List<String> getAvailable() {
+                return other.getAvailable();
+            }
+
+            @Override
+            public Set<String> getFailed() {
+                return other.getFailed();
+            }
+        };
+        defaultImpl.recordOutcomes(batch);
+        for (String s : of("s1", "s2", "s3")) {
+            assertEquals(other.currentWeight(s), failover.currentWeight(s));
+        }
+        failover.close();
+        other.close();
+    }
+
+    @Test
+    void testRecordOutcomesEventsAfterVersion() {
+        List<String> availableOnEvent = new ArrayList<>();
+        AtomicReference<WeightFailover<String>> holder = new AtomicReference<>();
+        WeightFailover<String> failover = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 0.0)
+                .onEvent(it -> {
+                    if (it.object().equals("s1")) {
+                        availableOnEvent.addAll(holder.get().getAvailable());
+                    }
+                })
+                .asyncListeners(100, Runnable::run)
+                .build(ImmutableMap.of("s1", 100, "s2", 100));
+        holder.set(failover);
+        failover.recordOutcomes(new OutcomeBatch<String>()
+                .fail("s1")
+                .fail("s2", 100));
+        // the change of s1 is published after the down of s2 is in the selection.
+        assertEquals(of("s1"), availableOnEvent);
+        failover.close();
+    }
 
     private boolean check(String test) {
         System.out.println("test:" + test);
@@ -243,4 +1080,15 @@ class WeightFailoverTest {
         }
         return result;
     }
+
+    /**
+     * polls the condition instead of sleeping for a fixed time.
+     */
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - deadline < 0, "timeout");
+            sleepUninterruptibly(1, MILLISECONDS);
+        }
+    }
 }
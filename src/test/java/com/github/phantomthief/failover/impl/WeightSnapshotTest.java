@@ -0,0 +1,67 @@
+package com.github.phantomthief.failover.impl;
+
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class WeightSnapshotTest {
+
+    @Test
+    void test() {
+        WeightTable<String> table = new WeightTable<>(ImmutableMap.of("s1", 10, "s2", 20));
+        WeightSnapshot<String> snapshot = table.snapshot();
+        assertEquals(ImmutableList.of("s1", "s2"), snapshot.available);
+        assertTrue(snapshot.failed.isEmpty());
+
+        table.get("s1").compareAndSetWeight(10, 0);
+        // nothing changed before notified.
+        assertSame(snapshot, table.snapshot());
+        table.onWeightChanged(10, 0);
+
+        WeightSnapshot<String> newSnapshot = table.snapshot();
+        assertTrue(newSnapshot.version > snapshot.version);
+        assertEquals(ImmutableList.of("s2"), newSnapshot.available);
+        assertEquals(singleton("s1"), newSnapshot.failed);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("s2", newSnapshot.pick().object);
+        }
+        // the old one is immutable.
+        assertEquals(ImmutableList.of("s1", "s2"), snapshot.available);
+
+        table.get("s2").compareAndSetWeight(20, 0);
+        table.onWeightChanged(20, 0);
+        assertNull(table.snapshot().aliasTable);
+        assertTrue(table.snapshot().available.isEmpty());
+
+        table.getOrAdd("s3", 5);
+        assertEquals(ImmutableList.of("s3"), table.snapshot().available);
+    }
+
+    @Test
+    void testRefreshInterval() {
+        WeightTable<String> table = new WeightTable<>(ImmutableMap.of("s1", 10, "s2", 20),
+                new WeightFailoverBuilder<String>().weightRefreshInterval(1, HOURS));
+        WeightSnapshot<String> snapshot = table.snapshot();
+
+        table.get("s1").compareAndSetWeight(10, 5);
+        table.onWeightChanged(10, 5);
+        // weight only change is delayed.
+        assertSame(snapshot, table.snapshot());
+
+        table.get("s2").compareAndSetWeight(20, 0);
+        table.onWeightChanged(20, 0);
+        // but transition is applied at once, with all pending weight changes.
+        WeightSnapshot<String> newSnapshot = table.snapshot();
+        assertEquals(ImmutableList.of("s1"), newSnapshot.available);
+        assertEquals(5, newSnapshot.weights[0]);
+        assertSame(newSnapshot, table.snapshot());
+    }
+}
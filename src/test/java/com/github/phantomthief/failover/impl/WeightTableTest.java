@@ -0,0 +1,73 @@
+package com.github.phantomthief.failover.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.failover.impl.WeightTable.Slot;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+class WeightTableTest {
+
+    @Test
+    void test() {
+        WeightTable<String> table = new WeightTable<>(ImmutableMap.of("s1", 10, "s2", 20));
+        assertEquals(2, table.size());
+        Slot<String> s1 = table.get("s1");
+        assertEquals(0, s1.index);
+        assertEquals(10, s1.initWeight);
+        assertEquals(10, s1.currentWeight);
+        assertNull(table.get("s3"));
+
+        for (int i = 0; i < 100; i++) {
+            Slot<String> slot = table.getOrAdd("a" + i, 5);
+            assertEquals(i + 2, slot.index);
+            assertSame(slot, table.slots()[slot.index]);
+        }
+        assertEquals(102, table.size());
+        // index is stable after growing.
+        assertSame(s1, table.get("s1"));
+        assertSame(s1, table.slots()[0]);
+        assertSame(s1, table.getOrAdd("s1", 5));
+        assertEquals(10, s1.initWeight);
+    }
+
+    @Test
+    void testUpdate() {
+        WeightTable<String> table = new WeightTable<>(ImmutableMap.of("s1", 10, "s2", 20, "s3", 30));
+        Slot<String> s1 = table.get("s1");
+        s1.currentWeight = 5;
+        Slot<String> s3 = table.get("s3");
+        s3.currentWeight = 15;
+        WeightSnapshot<String> snapshot = table.snapshot();
+
+        table.update(ImmutableMap.of("s1", 10, "s3", 60, "s4", 40));
+        assertEquals(3, table.size());
+        assertNull(table.get("s2"));
+        // kept as is.
+        assertSame(s1, table.get("s1"));
+        assertEquals(5, s1.currentWeight);
+        // the health ratio is kept on init weight changed, in the same slot.
+        assertSame(s3, table.get("s3"));
+        assertEquals(60, s3.initWeight);
+        assertEquals(30, s3.currentWeight);
+        // the index of the removed one is reused.
+        Slot<String> s4 = table.get("s4");
+        assertEquals(1, s4.index);
+        assertSame(s4, table.slots()[1]);
+
+        // the published snapshot is not affected.
+        assertEquals("s2", snapshot.slots[1].object);
+        WeightSnapshot<String> newSnapshot = table.snapshot();
+        assertNotSame(snapshot, newSnapshot);
+        assertEquals(ImmutableList.of("s1", "s4", "s3"), newSnapshot.available);
+
+        table.update(ImmutableMap.of("s3", 60));
+        assertEquals(ImmutableList.of("s3"), table.snapshot().available);
+        assertEquals("{s3=60}", table.toString());
+    }
+}
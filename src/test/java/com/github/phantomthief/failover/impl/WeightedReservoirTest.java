@@ -0,0 +1,64 @@
+package com.github.phantomthief.failover.impl;
+
+import static com.github.phantomthief.failover.WeighTestUtils.checkRatio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+class WeightedReservoirTest {
+
+    @Test
+    void test() {
+        double[] weights = {1, 2, 0, 3, 4};
+        Multiset<Integer> first = HashMultiset.create();
+        for (int i = 0; i < 50000; i++) {
+            int[] result = WeightedReservoir.sample(weights, 2, index -> true);
+            assertEquals(2, result.length);
+            assertTrue(result[0] != result[1]);
+            first.add(result[0]);
+        }
+        // the first one is picked by weight.
+        assertEquals(0, first.count(2));
+        assertTrue(checkRatio(first.count(1), first.count(0), 2));
+        assertTrue(checkRatio(first.count(3), first.count(0), 3));
+        assertTrue(checkRatio(first.count(4), first.count(0), 4));
+    }
+
+    @Test
+    void testJump() {
+        double[] weights = new double[2000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i < 1000 ? 1 : 3;
+        }
+        Multiset<Boolean> result = HashMultiset.create();
+        for (int i = 0; i < 2000; i++) {
+            int[] picked = WeightedReservoir.sample(weights, 50, index -> index % 10 != 0);
+            assertEquals(50, picked.length);
+            Set<Integer> distinct = new HashSet<>();
+            for (int index : picked) {
+                assertTrue(index % 10 != 0);
+                assertTrue(distinct.add(index));
+                result.add(index >= 1000);
+            }
+        }
+        assertTrue(checkRatio(result.count(true), result.count(false), 3));
+    }
+
+    @Test
+    void testLessThanN() {
+        double[] weights = {1, 0, 3, 4};
+        int[] result = WeightedReservoir.sample(weights, 10, index -> index != 3);
+        assertEquals(2, result.length);
+        assertEquals(new HashSet<>(Arrays.asList(0, 2)),
+                new HashSet<>(Arrays.asList(result[0], result[1])));
+        assertEquals(0, WeightedReservoir.sample(weights, 0, index -> true).length);
+    }
+}
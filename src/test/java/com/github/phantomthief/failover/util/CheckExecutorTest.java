@@ -0,0 +1,86 @@
+package com.github.phantomthief.failover.util;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.failover.impl.WeightFailover;
+import com.google.common.collect.ImmutableMap;
+
+class CheckExecutorTest {
+
+    @Test
+    void testQueued() {
+        CheckExecutor executor = CheckExecutor.isolated("test-queued", 1);
+        assertSame(executor, CheckExecutor.isolated("test-queued", 1));
+        assertSame(executor, CheckExecutor.executors().get(executor.name()));
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+        });
+        awaitUninterruptibly(started);
+        Future<?> waiting = executor.submit(() -> { });
+        assertEquals(1, executor.running());
+        assertEquals(1, executor.queued());
+        waiting.cancel(false);
+        assertEquals(0, executor.queued());
+        release.countDown();
+        long start = currentTimeMillis();
+        while (executor.running() > 0 && currentTimeMillis() - start < 1000) {
+            sleepUninterruptibly(10, MILLISECONDS);
+        }
+        assertEquals(0, executor.running());
+        assertEquals(1, executor.completed());
+    }
+
+    @Test
+    void testThreadPerCheck() throws Exception {
+        CheckExecutor executor = CheckExecutor.threadPerCheck();
+        Thread[] threads = new Thread[2];
+        executor.submit(() -> threads[0] = Thread.currentThread()).get();
+        executor.submit(() -> threads[1] = Thread.currentThread()).get();
+        assertTrue(threads[0] != threads[1]);
+    }
+
+    @Test
+    void testIsolated() {
+        CountDownLatch release = new CountDownLatch(1);
+        WeightFailover<String> hung = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> {
+                    awaitUninterruptibly(release);
+                    return 1.0;
+                })
+                .checkExecutor(CheckExecutor.isolated("test-hung", 1))
+                .checkDuration(10, MILLISECONDS)
+                .build(ImmutableMap.of("s1", 100));
+        WeightFailover<String> other = WeightFailover.<String> newGenericBuilder()
+                .checker(it -> 1.0)
+                .checkExecutor(CheckExecutor.isolated("test-other", 1))
+                .checkDuration(10, MILLISECONDS)
+                .build(ImmutableMap.of("s1", 100));
+        hung.down("s1");
+        other.down("s1");
+        long start = currentTimeMillis();
+        while (!other.getFailed().isEmpty() && currentTimeMillis() - start < 1000) {
+            sleepUninterruptibly(10, MILLISECONDS);
+        }
+        assertTrue(other.getFailed().isEmpty());
+        assertEquals(1, hung.failedCount());
+        assertEquals(1, CheckExecutor.isolated("test-hung", 1).running());
+        release.countDown();
+        hung.close();
+        other.close();
+    }
+}